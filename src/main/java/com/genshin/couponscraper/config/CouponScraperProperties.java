@@ -0,0 +1,729 @@
+package com.genshin.couponscraper.config;
+
+import com.genshin.couponscraper.model.Game;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "coupon")
+public class CouponScraperProperties {
+    
+    private final Cache cache = new Cache();
+    private final Refresh refresh = new Refresh();
+    private final Aggregate aggregate = new Aggregate();
+    private final Http http = new Http();
+    private final Api api = new Api();
+    private final HtmlUnit htmlUnit = new HtmlUnit();
+    private final Wiki wiki = new Wiki();
+    private final Breaker breaker = new Breaker();
+    private final Retry retry = new Retry();
+    private final Store store = new Store();
+    private final History history = new History();
+    private final Stream stream = new Stream();
+    
+    public Cache getCache() {
+        return cache;
+    }
+    
+    public Refresh getRefresh() {
+        return refresh;
+    }
+    
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
+    
+    public Http getHttp() {
+        return http;
+    }
+    
+    public Api getApi() {
+        return api;
+    }
+    
+    public HtmlUnit getHtmlUnit() {
+        return htmlUnit;
+    }
+    
+    public Wiki getWiki() {
+        return wiki;
+    }
+    
+    public Breaker getBreaker() {
+        return breaker;
+    }
+    
+    public Retry getRetry() {
+        return retry;
+    }
+    
+    public Store getStore() {
+        return store;
+    }
+    
+    public History getHistory() {
+        return history;
+    }
+    
+    public Stream getStream() {
+        return stream;
+    }
+    
+    public static class Cache {
+        
+        /** How long a scraped snapshot is served before a background refresh is triggered. */
+        private Duration ttl = Duration.ofMinutes(5);
+        
+        /** Worker threads used for background refreshes. */
+        private int refreshThreads = 2;
+        
+        public Duration getTtl() {
+            return ttl;
+        }
+        
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+        
+        public int getRefreshThreads() {
+            return refreshThreads;
+        }
+        
+        public void setRefreshThreads(int refreshThreads) {
+            this.refreshThreads = refreshThreads;
+        }
+    }
+    
+    public static class Refresh {
+        
+        /** Whether snapshots are refreshed on a schedule, off the request path. */
+        private boolean enabled = true;
+        
+        /** Refresh interval for games without an entry in {@link #intervals}. */
+        private Duration defaultInterval = Duration.ofMinutes(5);
+        
+        /** Per-game refresh interval, keyed by game slug (e.g. {@code fc-mobile}). */
+        private Map<String, Duration> intervals = new HashMap<>();
+        
+        /** Maximum random offset added to each run so sources are not fetched in lockstep. */
+        private Duration jitter = Duration.ofSeconds(30);
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public Duration getDefaultInterval() {
+            return defaultInterval;
+        }
+        
+        public void setDefaultInterval(Duration defaultInterval) {
+            this.defaultInterval = defaultInterval;
+        }
+        
+        public Map<String, Duration> getIntervals() {
+            return intervals;
+        }
+        
+        public void setIntervals(Map<String, Duration> intervals) {
+            this.intervals = intervals;
+        }
+        
+        public Duration getJitter() {
+            return jitter;
+        }
+        
+        public void setJitter(Duration jitter) {
+            this.jitter = jitter;
+        }
+        
+        public Duration intervalFor(Game game) {
+            return intervals.getOrDefault(game.getSlug(), defaultInterval);
+        }
+    }
+    
+    public static class Aggregate {
+        
+        /** Time budget shared by all sources of one {@code /craw/all} request. */
+        private Duration timeout = Duration.ofSeconds(5);
+        
+        /** Threads used to query the sources in parallel. */
+        private int threads = 10;
+        
+        public Duration getTimeout() {
+            return timeout;
+        }
+        
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+    }
+    
+    public static class Http {
+        
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        
+        /** Default socket read timeout; scrapers may pass their own per request. */
+        private Duration readTimeout = Duration.ofSeconds(10);
+        
+        /** How long to wait for a free pooled connection. */
+        private Duration connectionRequestTimeout = Duration.ofSeconds(5);
+        
+        /** Upper bound on how long an idle connection is kept open for reuse. */
+        private Duration keepAlive = Duration.ofSeconds(30);
+        
+        /** Maximum lifetime of a pooled connection, regardless of activity. */
+        private Duration connectionTimeToLive = Duration.ofMinutes(5);
+        
+        private int maxConnections = 20;
+        
+        private int maxConnectionsPerHost = 4;
+        
+        private String userAgent = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+        
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+        
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+        
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+        
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+        
+        public Duration getConnectionRequestTimeout() {
+            return connectionRequestTimeout;
+        }
+        
+        public void setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+        }
+        
+        public Duration getKeepAlive() {
+            return keepAlive;
+        }
+        
+        public void setKeepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+        
+        public Duration getConnectionTimeToLive() {
+            return connectionTimeToLive;
+        }
+        
+        public void setConnectionTimeToLive(Duration connectionTimeToLive) {
+            this.connectionTimeToLive = connectionTimeToLive;
+        }
+        
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+        
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+        
+        public int getMaxConnectionsPerHost() {
+            return maxConnectionsPerHost;
+        }
+        
+        public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+        }
+        
+        public String getUserAgent() {
+            return userAgent;
+        }
+        
+        public void setUserAgent(String userAgent) {
+            this.userAgent = userAgent;
+        }
+    }
+    
+    public static class Api {
+        
+        /** {@code Cache-Control: max-age} sent with coupon responses. */
+        private Duration maxAge = Duration.ofSeconds(30);
+        
+        /** Longest {@code wait} a long-poll request on a coupon endpoint is held for. */
+        private Duration maxWait = Duration.ofSeconds(60);
+        
+        public Duration getMaxAge() {
+            return maxAge;
+        }
+        
+        public void setMaxAge(Duration maxAge) {
+            this.maxAge = maxAge;
+        }
+        
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+        
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+    
+    public static class HtmlUnit {
+        
+        /** Maximum number of live browsers, leased or idle. */
+        private int poolSize = 2;
+        
+        /** Browsers created and warmed up when the application starts. */
+        private int prewarm = 1;
+        
+        /** Renders after which a browser is closed and replaced. */
+        private int maxUses = 20;
+        
+        /** Heap usage fraction above which returned browsers are closed instead of pooled. */
+        private double maxHeapUsage = 0.8;
+        
+        /** How long a render waits for a free browser. */
+        private Duration leaseTimeout = Duration.ofSeconds(20);
+        
+        /** Page load timeout of each browser. */
+        private Duration timeout = Duration.ofSeconds(20);
+        
+        /** Upper bound on how long a render waits for its content to appear. */
+        private Duration renderWait = Duration.ofSeconds(3);
+        
+        /** How often a render checks whether its content has appeared. */
+        private Duration renderPollInterval = Duration.ofMillis(100);
+        
+        private String userAgent = "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/114.0.0.0 Mobile Safari/537.36";
+        
+        /** URL substrings answered with an empty response instead of being fetched. */
+        private List<String> blockedResources = new ArrayList<>(List.of(
+                "google-analytics.com", "googletagmanager.com", "doubleclick.net", "googlesyndication.com",
+                "facebook.net", "facebook.com/tr", "hotjar.com", "clarity.ms", "fonts.googleapis.com",
+                "fonts.gstatic.com",
+                ".woff", ".woff2", ".ttf", ".png", ".jpg", ".jpeg", ".gif", ".svg", ".webp", ".css"));
+        
+        /** URL substrings that are always fetched, even if they match {@link #blockedResources}. */
+        private List<String> allowedResources = new ArrayList<>();
+        
+        public int getPoolSize() {
+            return poolSize;
+        }
+        
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+        
+        public int getPrewarm() {
+            return prewarm;
+        }
+        
+        public void setPrewarm(int prewarm) {
+            this.prewarm = prewarm;
+        }
+        
+        public int getMaxUses() {
+            return maxUses;
+        }
+        
+        public void setMaxUses(int maxUses) {
+            this.maxUses = maxUses;
+        }
+        
+        public double getMaxHeapUsage() {
+            return maxHeapUsage;
+        }
+        
+        public void setMaxHeapUsage(double maxHeapUsage) {
+            this.maxHeapUsage = maxHeapUsage;
+        }
+        
+        public Duration getLeaseTimeout() {
+            return leaseTimeout;
+        }
+        
+        public void setLeaseTimeout(Duration leaseTimeout) {
+            this.leaseTimeout = leaseTimeout;
+        }
+        
+        public Duration getTimeout() {
+            return timeout;
+        }
+        
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+        
+        public Duration getRenderWait() {
+            return renderWait;
+        }
+        
+        public void setRenderWait(Duration renderWait) {
+            this.renderWait = renderWait;
+        }
+        
+        public Duration getRenderPollInterval() {
+            return renderPollInterval;
+        }
+        
+        public void setRenderPollInterval(Duration renderPollInterval) {
+            this.renderPollInterval = renderPollInterval;
+        }
+        
+        public String getUserAgent() {
+            return userAgent;
+        }
+        
+        public void setUserAgent(String userAgent) {
+            this.userAgent = userAgent;
+        }
+        
+        public List<String> getBlockedResources() {
+            return blockedResources;
+        }
+        
+        public void setBlockedResources(List<String> blockedResources) {
+            this.blockedResources = blockedResources;
+        }
+        
+        public List<String> getAllowedResources() {
+            return allowedResources;
+        }
+        
+        public void setAllowedResources(List<String> allowedResources) {
+            this.allowedResources = allowedResources;
+        }
+    }
+    
+    public static class Wiki {
+        
+        /** How a fandom wiki source is fetched. */
+        public enum Mode {
+            /** The rendered article page. */
+            PAGE,
+            /** Only the codes section, through the MediaWiki parse API; falls back to the page. */
+            SECTION
+        }
+        
+        /** Mode for wiki sources without an entry in {@link #modes}. */
+        private Mode mode = Mode.PAGE;
+        
+        /** Per-game mode, keyed by game slug (e.g. {@code genshin}). */
+        private Map<String, Mode> modes = new HashMap<>();
+        
+        /** Per-game wiki base URL replacing the built-in one, e.g. {@code https://genshin-impact.fandom.com}. */
+        private Map<String, String> baseUrls = new HashMap<>();
+        
+        /** Per-game heading of the codes section replacing the built-in one, e.g. {@code Active Codes}. */
+        private Map<String, String> sections = new HashMap<>();
+        
+        /** How long a resolved section number is trusted before the section list is fetched again. */
+        private Duration sectionIndexTtl = Duration.ofHours(1);
+        
+        public Mode getMode() {
+            return mode;
+        }
+        
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+        
+        public Map<String, Mode> getModes() {
+            return modes;
+        }
+        
+        public void setModes(Map<String, Mode> modes) {
+            this.modes = modes;
+        }
+        
+        public Map<String, String> getBaseUrls() {
+            return baseUrls;
+        }
+        
+        public void setBaseUrls(Map<String, String> baseUrls) {
+            this.baseUrls = baseUrls;
+        }
+        
+        public Map<String, String> getSections() {
+            return sections;
+        }
+        
+        public void setSections(Map<String, String> sections) {
+            this.sections = sections;
+        }
+        
+        public Duration getSectionIndexTtl() {
+            return sectionIndexTtl;
+        }
+        
+        public void setSectionIndexTtl(Duration sectionIndexTtl) {
+            this.sectionIndexTtl = sectionIndexTtl;
+        }
+        
+        public Mode modeFor(Game game) {
+            return modes.getOrDefault(game.getSlug(), mode);
+        }
+        
+        public String baseUrlFor(Game game, String defaultBaseUrl) {
+            return baseUrls.getOrDefault(game.getSlug(), defaultBaseUrl);
+        }
+        
+        public String sectionFor(Game game, String defaultSection) {
+            return sections.getOrDefault(game.getSlug(), defaultSection);
+        }
+    }
+    
+    public static class Breaker {
+        
+        /** Consecutive failed or timed-out scrapes of a source that open its circuit. */
+        private int failureThreshold = 3;
+        
+        /** How long an open circuit fails fast before a single probe scrape is let through. */
+        private Duration openDuration = Duration.ofMinutes(1);
+        
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+        
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+        
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+        
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+    }
+    
+    public static class Retry {
+        
+        /** Attempts per scrape, including the first one. */
+        private int maxAttempts = 2;
+        
+        /** Backoff after the first failed attempt; doubles (see {@link #multiplier}) with every further failure. */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        
+        /** Upper bound of the backoff between attempts. */
+        private Duration maxBackoff = Duration.ofSeconds(10);
+        
+        /** Growth of the backoff per failed attempt. */
+        private double multiplier = 2.0;
+        
+        /** Fraction (0-1) of each backoff that is randomly taken off so sources do not retry in lockstep. */
+        private double jitter = 0.5;
+        
+        /** Latency percentile of a source's first strategy after which its second strategy is started in parallel. */
+        private double hedgePercentile = 95;
+        
+        /** Earliest point at which a second strategy is started, also used until latencies have been recorded. */
+        private Duration minHedgeDelay = Duration.ofSeconds(3);
+        
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+        
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+        
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+        
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+        
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+        
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+        
+        public double getMultiplier() {
+            return multiplier;
+        }
+        
+        public void setMultiplier(double multiplier) {
+            this.multiplier = multiplier;
+        }
+        
+        public double getJitter() {
+            return jitter;
+        }
+        
+        public void setJitter(double jitter) {
+            this.jitter = jitter;
+        }
+        
+        public double getHedgePercentile() {
+            return hedgePercentile;
+        }
+        
+        public void setHedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+        }
+        
+        public Duration getMinHedgeDelay() {
+            return minHedgeDelay;
+        }
+        
+        public void setMinHedgeDelay(Duration minHedgeDelay) {
+            this.minHedgeDelay = minHedgeDelay;
+        }
+    }
+    
+    public static class Store {
+        
+        /** Whether snapshots are kept on disk and loaded again on startup. */
+        private boolean enabled = true;
+        
+        /** Directory holding one snapshot log per game. */
+        private String directory = "data/snapshots";
+        
+        /** Size past which a game's log is rewritten as a single record. */
+        private DataSize compactAfter = DataSize.ofKilobytes(256);
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public String getDirectory() {
+            return directory;
+        }
+        
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+        
+        public DataSize getCompactAfter() {
+            return compactAfter;
+        }
+        
+        public void setCompactAfter(DataSize compactAfter) {
+            this.compactAfter = compactAfter;
+        }
+    }
+    
+    public static class History {
+        
+        /** Whether changes of each game's code set are recorded for the history endpoints. */
+        private boolean enabled = true;
+        
+        /** Directory holding one code history log per game. */
+        private String directory = "data/history";
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public String getDirectory() {
+            return directory;
+        }
+        
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+    }
+    
+    public static class Stream {
+        
+        /** Most recent change events kept for subscribers resuming with Last-Event-ID. */
+        private int bufferSize = 256;
+        
+        /** How long a subscription stays open before the client has to reconnect. */
+        private Duration timeout = Duration.ofMinutes(30);
+        
+        /** Interval of the comment sent to keep idle connections open and find closed ones. */
+        private Duration heartbeat = Duration.ofSeconds(30);
+        
+        /** Open subscriptions above which new subscribers are turned away. */
+        private int maxSubscribers = 10_000;
+        
+        /** Events queued for a subscriber not yet written to it, above which it is evicted. */
+        private int subscriberQueue = 32;
+        
+        /** How long one write to a subscriber may stay stuck before it is evicted. */
+        private Duration sendTimeout = Duration.ofSeconds(30);
+        
+        public int getBufferSize() {
+            return bufferSize;
+        }
+        
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+        
+        public Duration getTimeout() {
+            return timeout;
+        }
+        
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+        
+        public Duration getHeartbeat() {
+            return heartbeat;
+        }
+        
+        public void setHeartbeat(Duration heartbeat) {
+            this.heartbeat = heartbeat;
+        }
+        
+        public int getMaxSubscribers() {
+            return maxSubscribers;
+        }
+        
+        public void setMaxSubscribers(int maxSubscribers) {
+            this.maxSubscribers = maxSubscribers;
+        }
+        
+        public int getSubscriberQueue() {
+            return subscriberQueue;
+        }
+        
+        public void setSubscriberQueue(int subscriberQueue) {
+            this.subscriberQueue = subscriberQueue;
+        }
+        
+        public Duration getSendTimeout() {
+            return sendTimeout;
+        }
+        
+        public void setSendTimeout(Duration sendTimeout) {
+            this.sendTimeout = sendTimeout;
+        }
+    }
+}
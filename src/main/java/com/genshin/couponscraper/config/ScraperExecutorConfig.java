@@ -0,0 +1,108 @@
+package com.genshin.couponscraper.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for scraping work. With {@code spring.threads.virtual.enabled=true} (which
+ * also moves Tomcat request handling onto virtual threads) every blocking scrape runs
+ * on its own virtual thread instead of occupying a slot in a bounded platform pool.
+ */
+@Configuration
+public class ScraperExecutorConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ScraperExecutorConfig.class);
+    
+    private final boolean virtualThreads;
+    
+    public ScraperExecutorConfig(Environment environment) {
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+        logger.info("Scrapes run on {} threads", virtualThreads ? "virtual" : "platform");
+    }
+    
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService scrapeExecutor(CouponScraperProperties properties) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(virtualThreads("coupon-refresh-"));
+        }
+        return Executors.newFixedThreadPool(properties.getCache().getRefreshThreads(),
+                namedDaemonThreads("coupon-refresh-"));
+    }
+    
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService fanOutExecutor(CouponScraperProperties properties) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(virtualThreads("coupon-fanout-"));
+        }
+        return Executors.newFixedThreadPool(properties.getAggregate().getThreads(),
+                namedDaemonThreads("coupon-fanout-"));
+    }
+    
+    /** Only times scheduled refreshes; the refreshes themselves run on {@code scrapeExecutor}. */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService refreshScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(namedDaemonThreads("coupon-scheduler-"));
+    }
+    
+    /**
+     * Runs individual scrape attempts. Unbounded, because an attempt may wait on hedged
+     * attempts of its own; the number in flight is bounded by the games, as scrapes of
+     * one game are coalesced.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService scrapeAttemptExecutor() {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(virtualThreads("coupon-attempt-"));
+        }
+        return Executors.newCachedThreadPool(namedDaemonThreads("coupon-attempt-"));
+    }
+    
+    /** Only times retries and hedges; the attempts themselves run on {@code scrapeAttemptExecutor}. */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService retryScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(namedDaemonThreads("coupon-retry-"));
+    }
+    
+    /**
+     * Queues change events and heartbeats for {@code /craw/stream} subscribers. One thread,
+     * so every subscriber sees events in order and a replay cannot interleave with them.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService streamExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(namedDaemonThreads("coupon-stream-"));
+    }
+    
+    /**
+     * Writes the queued events of {@code /craw/stream} subscribers, one task per subscriber
+     * with events pending, so a client that stops reading holds up only its own thread.
+     * Platform threads even in virtual mode: an emitter writes while holding its monitor,
+     * which would pin the carrier of a virtual thread stuck on a slow client.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService streamDeliveryExecutor() {
+        return Executors.newCachedThreadPool(namedDaemonThreads("coupon-stream-send-"));
+    }
+    
+    public static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    public static ThreadFactory virtualThreads(String prefix) {
+        return Thread.ofVirtual().name(prefix, 1).factory();
+    }
+}
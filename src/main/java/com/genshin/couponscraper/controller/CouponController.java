@@ -1,20 +1,42 @@
 package com.genshin.couponscraper.controller;
 
-import com.genshin.couponscraper.model.CouponResponse;
-import com.genshin.couponscraper.service.GenshinImpactScraperService;
-import com.genshin.couponscraper.service.HonkaiStarRailScraperService;
-import com.genshin.couponscraper.service.BloxFruitsScraperService;
-import com.genshin.couponscraper.service.PlayTogetherScraperService;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.fetch.PageFetcher;
+import com.genshin.couponscraper.fetch.WebClientPool;
+import com.genshin.couponscraper.model.AggregateCouponResponse;
+import com.genshin.couponscraper.model.CodeHistoryResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.EncodedCoupons;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.service.CouponAggregationService;
+import com.genshin.couponscraper.service.CouponCacheService;
+import com.genshin.couponscraper.service.CouponChangeFeed;
+import com.genshin.couponscraper.service.CouponResponseEncoder;
 import com.genshin.couponscraper.service.FCMobileScraperService;
+import com.genshin.couponscraper.service.RetryExecutor;
+import com.genshin.couponscraper.service.SnapshotWatcher;
+import com.genshin.couponscraper.store.CouponHistoryStore;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.List;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/craw")
@@ -22,32 +44,52 @@ import java.util.Map;
 public class CouponController {
     
     private static final Logger logger = LoggerFactory.getLogger(CouponController.class);
+    private static final String SNAPSHOT_AGE_HEADER = "X-Snapshot-Age";
     
     @Autowired
-    private GenshinImpactScraperService genshinImpactScraperService;
+    private CouponCacheService couponCacheService;
     
     @Autowired
-    private HonkaiStarRailScraperService honkaiStarRailScraperService;
+    private CouponAggregationService couponAggregationService;
     
     @Autowired
-    private BloxFruitsScraperService bloxFruitsScraperService;
+    private PageFetcher pageFetcher;
     
     @Autowired
-    private PlayTogetherScraperService playTogetherScraperService;
+    private WebClientPool webClientPool;
     
     @Autowired
     private FCMobileScraperService fcMobileScraperService;
     
+    @Autowired
+    private CouponResponseEncoder couponResponseEncoder;
+    
+    @Autowired
+    private RetryExecutor retryExecutor;
+    
+    @Autowired
+    private CouponHistoryStore couponHistoryStore;
+    
+    @Autowired
+    private CouponChangeFeed couponChangeFeed;
+    
+    @Autowired
+    private SnapshotWatcher snapshotWatcher;
+    
+    @Autowired
+    private CouponScraperProperties properties;
+    
     @GetMapping("/genshin")
-    public ResponseEntity<?> getGenshinCoupons() {
+    public ResponseEntity<?> getGenshinCoupons(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
             logger.info("Received request for Genshin Impact coupons");
             
-            List<CouponResponse> coupons = genshinImpactScraperService.getActiveCoupons();
-            
-            logger.info("Returning {} Genshin Impact coupons", coupons.size());
-            return ResponseEntity.ok(coupons);
+            CouponSnapshot snapshot = couponCacheService.getSnapshot(Game.GENSHIN);
             
+            logger.info("Returning {} Genshin Impact coupons", snapshot.getCoupons().size());
+            return cacheableResponse(snapshot, acceptEncoding);
+        
         } catch (Exception e) {
             logger.error("Error fetching Genshin Impact coupons: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -59,15 +101,16 @@ public class CouponController {
     }
     
     @GetMapping("/honkai-star-rail")
-    public ResponseEntity<?> getHonkaiStarRailCoupons() {
+    public ResponseEntity<?> getHonkaiStarRailCoupons(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
             logger.info("Received request for Honkai Star Rail redemption codes");
             
-            List<CouponResponse> coupons = honkaiStarRailScraperService.getActiveCoupons();
-            
-            logger.info("Returning {} Honkai Star Rail coupons", coupons.size());
-            return ResponseEntity.ok(coupons);
+            CouponSnapshot snapshot = couponCacheService.getSnapshot(Game.HONKAI_STAR_RAIL);
             
+            logger.info("Returning {} Honkai Star Rail coupons", snapshot.getCoupons().size());
+            return cacheableResponse(snapshot, acceptEncoding);
+        
         } catch (Exception e) {
             logger.error("Error fetching Honkai Star Rail coupons: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -79,15 +122,16 @@ public class CouponController {
     }
     
     @GetMapping("/blox-fruits")
-    public ResponseEntity<?> getBloxFruitsCoupons() {
+    public ResponseEntity<?> getBloxFruitsCoupons(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
             logger.info("Received request for Blox Fruits codes");
             
-            List<CouponResponse> coupons = bloxFruitsScraperService.scrapeActiveCoupons();
-            
-            logger.info("Returning {} Blox Fruits codes", coupons.size());
-            return ResponseEntity.ok(coupons);
+            CouponSnapshot snapshot = couponCacheService.getSnapshot(Game.BLOX_FRUITS);
             
+            logger.info("Returning {} Blox Fruits codes", snapshot.getCoupons().size());
+            return cacheableResponse(snapshot, acceptEncoding);
+        
         } catch (Exception e) {
             logger.error("Error fetching Blox Fruits codes: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -99,15 +143,16 @@ public class CouponController {
     }
     
     @GetMapping("/play-together")
-    public ResponseEntity<?> getPlayTogetherCoupons() {
+    public ResponseEntity<?> getPlayTogetherCoupons(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
             logger.info("Received request for Play Together coupon codes");
             
-            List<CouponResponse> coupons = playTogetherScraperService.getActiveCoupons();
-            
-            logger.info("Returning {} Play Together coupons", coupons.size());
-            return ResponseEntity.ok(coupons);
+            CouponSnapshot snapshot = couponCacheService.getSnapshot(Game.PLAY_TOGETHER);
             
+            logger.info("Returning {} Play Together coupons", snapshot.getCoupons().size());
+            return cacheableResponse(snapshot, acceptEncoding);
+        
         } catch (Exception e) {
             logger.error("Error fetching Play Together coupons: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -119,15 +164,16 @@ public class CouponController {
     }
     
     @GetMapping("/fc-mobile")
-    public ResponseEntity<?> getFCMobileCoupons() {
+    public ResponseEntity<?> getFCMobileCoupons(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
             logger.info("Received request for FC Mobile redeem codes");
             
-            List<CouponResponse> coupons = fcMobileScraperService.getActiveCoupons();
-            
-            logger.info("Returning {} FC Mobile codes", coupons.size());
-            return ResponseEntity.ok(coupons);
+            CouponSnapshot snapshot = couponCacheService.getSnapshot(Game.FC_MOBILE);
             
+            logger.info("Returning {} FC Mobile codes", snapshot.getCoupons().size());
+            return cacheableResponse(snapshot, acceptEncoding);
+        
         } catch (Exception e) {
             logger.error("Error fetching FC Mobile codes: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -138,14 +184,246 @@ public class CouponController {
         }
     }
     
-
+    /**
+     * The coupon endpoints with {@code wait} given, see {@link #awaitChange}. Literal paths
+     * rather than {@code /{game}}, which would lose to the plain handlers above.
+     */
+    @GetMapping(value = {"/genshin", "/honkai-star-rail", "/blox-fruits", "/play-together", "/fc-mobile"},
+            params = "wait")
+    public DeferredResult<ResponseEntity<?>> waitForCoupons(
+            @RequestParam String wait,
+            @RequestParam(required = false) String version,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletRequest request) {
+        String pattern = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Game game = Game.fromSlug(pattern.substring(pattern.lastIndexOf('/') + 1)).orElseThrow();
+        return awaitChange(game, wait, version != null ? version : ifNoneMatch, acceptEncoding);
+    }
+    
+    @GetMapping("/all")
+    public ResponseEntity<AggregateCouponResponse> getAllCoupons() {
+        logger.info("Received request for coupons of all games");
+        
+        AggregateCouponResponse response = couponAggregationService.getAllCoupons();
+        
+        logger.info("Returning coupons for {} of {} games", response.getCoupons().size(), Game.values().length);
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Server-sent events with the codes each refresh added and removed, for one game or
+     * all of them. A client reconnecting with {@code Last-Event-ID} is sent the changes
+     * it missed.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<SseEmitter> streamChanges(
+            @RequestParam(required = false) String game,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Game filter = null;
+        if (game != null) {
+            Optional<Game> found = Game.fromSlug(game);
+            if (found.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            filter = found.get();
+        }
+        
+        Optional<SseEmitter> emitter = couponChangeFeed.subscribe(filter, lastEventId);
+        if (emitter.isEmpty()) {
+            logger.warn("Turning away a stream subscriber, too many are connected");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(properties.getStream().getHeartbeat().toSeconds()))
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(emitter.get());
+    }
+    
+    /**
+     * The codes the game had at {@code at}, an ISO-8601 instant, or now when omitted.
+     */
+    @GetMapping("/history/{game}")
+    public ResponseEntity<?> getActiveCodes(
+            @PathVariable String game,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant at) {
+        Optional<Game> found = Game.fromSlug(game);
+        if (found.isEmpty()) {
+            return unknownGame(game);
+        }
+        
+        Instant time = at != null ? at : Instant.now();
+        return ResponseEntity.ok(CodeHistoryResponse.activeAt(found.get(), time,
+                couponHistoryStore.activeAt(found.get(), time)));
+    }
+    
+    /**
+     * The codes the game gained and lost between {@code from} and {@code to}, which
+     * defaults to now.
+     */
+    @GetMapping("/history/{game}/diff")
+    public ResponseEntity<?> getCodeChanges(
+            @PathVariable String game,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        Optional<Game> found = Game.fromSlug(game);
+        if (found.isEmpty()) {
+            return unknownGame(game);
+        }
+        
+        Instant end = to != null ? to : Instant.now();
+        if (from.isAfter(end)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of(
+                            "error", "Invalid time range",
+                            "message", "from must not be after to"
+                    ));
+        }
+        CouponHistoryStore.Changes changes = couponHistoryStore.changesBetween(found.get(), from, end);
+        return ResponseEntity.ok(CodeHistoryResponse.changes(found.get(), from, end,
+                changes.added(), changes.removed()));
+    }
+    
+    private static ResponseEntity<Map<String, String>> unknownGame(String game) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of(
+                        "error", "Unknown game",
+                        "message", "No game with slug " + game
+                ));
+    }
+    
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(Map.of(
+                "coalescing", couponCacheService.getCoalescingStats(),
+                "revalidation", pageFetcher.getRevalidationStats(),
+                "htmlUnitPool", webClientPool.getStats(),
+                "htmlUnitRender", fcMobileScraperService.getRenderStats(),
+                "fcMobileJSoup", fcMobileScraperService.getJSoupStats(),
+                "retries", retryExecutor.getStats(),
+                "history", couponHistoryStore.getStats(),
+                "stream", couponChangeFeed.getStats(),
+                "longPoll", snapshotWatcher.getStats()
+        ));
+    }
+    
+    /**
+     * Writes the snapshot's pre-serialized JSON in the best encoding the client accepts,
+     * with a strong ETag, a public max-age and the snapshot's age in seconds, which after
+     * a restart can be that of a snapshot from the previous run. A request whose
+     * {@code If-None-Match} matches gets a bodyless 304 instead.
+     */
+    private ResponseEntity<byte[]> cacheableResponse(CouponSnapshot snapshot, String acceptEncoding) {
+        EncodedCoupons.Representation body = couponResponseEncoder.encode(snapshot).select(acceptEncoding);
+        
+        ResponseEntity.BodyBuilder response = cacheHeaders(ResponseEntity.ok(), snapshot, body)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (body.isCompressed()) {
+            response.header(HttpHeaders.CONTENT_ENCODING, body.getEncoding());
+        }
+        return response.body(body.getBody());
+    }
+    
+    /** The headers of {@link #cacheableResponse} without a body, for a long poll that saw no change. */
+    private ResponseEntity<byte[]> notModified(CouponSnapshot snapshot, String acceptEncoding) {
+        EncodedCoupons.Representation body = couponResponseEncoder.encode(snapshot).select(acceptEncoding);
+        return cacheHeaders(ResponseEntity.status(HttpStatus.NOT_MODIFIED), snapshot, body).build();
+    }
+    
+    private ResponseEntity.BodyBuilder cacheHeaders(ResponseEntity.BodyBuilder response, CouponSnapshot snapshot,
+                                                    EncodedCoupons.Representation body) {
+        return response
+                .eTag(body.getETag())
+                .cacheControl(CacheControl.maxAge(properties.getApi().getMaxAge()).cachePublic())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .header(SNAPSHOT_AGE_HEADER, String.valueOf(snapshot.age().toSeconds()));
+    }
+    
+    /**
+     * Long-poll variant of the coupon endpoints: a request whose {@code version} or
+     * {@code If-None-Match} is the current ETag is parked without a servlet thread until
+     * the game's coupons change, then answered like a plain request, or after
+     * {@code wait} (e.g. {@code 30s}, at most {@code coupon.api.max-wait}) with a 304.
+     * Any other request is answered at once.
+     */
+    private DeferredResult<ResponseEntity<?>> awaitChange(Game game, String wait, String knownVersions,
+                                                          String acceptEncoding) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        Duration timeout;
+        try {
+            timeout = DurationStyle.detectAndParse(wait, ChronoUnit.SECONDS);
+        } catch (IllegalArgumentException e) {
+            result.setResult(ResponseEntity.badRequest()
+                    .body(Map.of(
+                            "error", "Invalid wait",
+                            "message", "wait must be a duration such as 30s"
+                    )));
+            return result;
+        }
+        if (timeout.compareTo(properties.getApi().getMaxWait()) > 0) {
+            timeout = properties.getApi().getMaxWait();
+        }
+        
+        CouponSnapshot snapshot;
+        try {
+            snapshot = couponCacheService.getSnapshot(game);
+        } catch (Exception e) {
+            logger.error("Error fetching {} coupons: {}", game.getDisplayName(), e.getMessage(), e);
+            result.setResult(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of(
+                            "error", "Failed to fetch " + game.getDisplayName() + " coupons",
+                            "message", String.valueOf(e.getMessage())
+                    )));
+            return result;
+        }
+        
+        EncodedCoupons.Representation body = couponResponseEncoder.encode(snapshot).select(acceptEncoding);
+        if (knownVersions == null || timeout.isNegative() || timeout.isZero()
+                || !isCurrent(knownVersions, snapshot.getETag(), body.getETag())) {
+            result.setResult(cacheableResponse(snapshot, acceptEncoding));
+            return result;
+        }
+        
+        logger.debug("Holding a {} request for up to {} ms", game.getDisplayName(), timeout.toMillis());
+        return snapshotWatcher.awaitChange(game, snapshot.getETag(), timeout,
+                changed -> cacheableResponse(changed, acceptEncoding),
+                () -> notModified(couponCacheService.peekSnapshot(game).orElse(snapshot), acceptEncoding));
+    }
+    
+    /**
+     * Whether one of the comma-separated, optionally weak or unquoted versions is one of
+     * the given ETags; {@code *} matches any.
+     */
+    private static boolean isCurrent(String knownVersions, String... eTags) {
+        for (String version : knownVersions.split(",")) {
+            String tag = version.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (!tag.startsWith("\"")) {
+                tag = "\"" + tag + "\"";
+            }
+            for (String eTag : eTags) {
+                if (tag.equals(eTag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     
     @GetMapping("/health")
-    public ResponseEntity<Map<String, String>> healthCheck() {
+    public ResponseEntity<Map<String, Object>> healthCheck() {
         return ResponseEntity.ok(Map.of(
                 "status", "UP",
                 "service", "HoYoverse Games Coupon Scraper",
-                "timestamp", String.valueOf(System.currentTimeMillis())
+                "timestamp", String.valueOf(System.currentTimeMillis()),
+                "circuitBreakers", couponCacheService.getBreakerStats()
         ));
     }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.genshin.couponscraper.fetch;
+
+import java.io.IOException;
+
+/**
+ * Turns the raw body of a fetched response into a result, for responses that are not
+ * HTML pages. The same caching rules as for {@link DocumentParser} apply.
+ */
+@FunctionalInterface
+public interface BodyParser<T> {
+    
+    T parse(String body, String url) throws IOException;
+}
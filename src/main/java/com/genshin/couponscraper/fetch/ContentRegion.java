@@ -0,0 +1,58 @@
+package com.genshin.couponscraper.fetch;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The part of a raw HTML page that carries the data a scraper needs, located by plain
+ * string markers so it can be found without building a DOM.
+ * <p>
+ * Pages without usable HTTP validators are fingerprinted over this region only, so
+ * churn elsewhere on the page (ads, nonces, cache timestamps) does not defeat the
+ * "unchanged since last time" check. When a marker is missing the whole body is used.
+ */
+public class ContentRegion {
+    
+    public static final ContentRegion WHOLE_BODY = new ContentRegion(null, null);
+    
+    /**
+     * Article body of a MediaWiki page, ending before the parser report comment whose
+     * cache timestamps change on every render.
+     */
+    public static final ContentRegion MEDIAWIKI_ARTICLE = between("class=\"mw-parser-output\"", "NewPP limit report");
+    
+    private final String startMarker;
+    private final String endMarker;
+    
+    private ContentRegion(String startMarker, String endMarker) {
+        this.startMarker = startMarker;
+        this.endMarker = endMarker;
+    }
+    
+    public static ContentRegion between(String startMarker, String endMarker) {
+        return new ContentRegion(startMarker, endMarker);
+    }
+    
+    public String extract(String body) {
+        if (startMarker == null) {
+            return body;
+        }
+        int start = body.indexOf(startMarker);
+        if (start < 0) {
+            return body;
+        }
+        int end = body.indexOf(endMarker, start + startMarker.length());
+        return end < 0 ? body.substring(start) : body.substring(start, end + endMarker.length());
+    }
+    
+    public String fingerprint(String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(extract(body).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
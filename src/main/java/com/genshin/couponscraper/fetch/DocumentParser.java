@@ -0,0 +1,13 @@
+package com.genshin.couponscraper.fetch;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Turns a fetched page into a scraper's result. Results may be cached and handed back
+ * to later callers when the page has not changed, so they must not be mutated.
+ */
+@FunctionalInterface
+public interface DocumentParser<T> {
+    
+    T parse(Document document);
+}
@@ -0,0 +1,29 @@
+package com.genshin.couponscraper.fetch;
+
+/**
+ * Decoded body of a successful upstream fetch.
+ */
+public class FetchedPage {
+    
+    private final String url;
+    private final int statusCode;
+    private final String body;
+    
+    public FetchedPage(String url, int statusCode, String body) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    public String getBody() {
+        return body;
+    }
+}
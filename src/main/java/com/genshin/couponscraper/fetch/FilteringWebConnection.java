@@ -0,0 +1,82 @@
+package com.genshin.couponscraper.fetch;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Web connection that short-circuits requests for resources a render does not need
+ * (analytics, ads, fonts, images, widgets) with an empty {@code 200} response, so
+ * HtmlUnit neither downloads nor executes them.
+ * <p>
+ * A URL is blocked when it contains one of the deny patterns and none of the allow
+ * patterns; matching is a case-insensitive substring test. Counters cover the requests
+ * since the last {@link #resetStats()}, which the pool calls at the start of each lease.
+ */
+public class FilteringWebConnection extends WebConnectionWrapper {
+    
+    private static final List<NameValuePair> EMPTY_HEADERS = List.of(new NameValuePair("Content-Type", "text/plain"));
+    
+    private final List<String> allowed;
+    private final List<String> denied;
+    private final AtomicLong allowedRequests = new AtomicLong();
+    private final AtomicLong allowedBytes = new AtomicLong();
+    private final AtomicLong blockedRequests = new AtomicLong();
+    
+    public FilteringWebConnection(WebClient webClient, List<String> allowed, List<String> denied) {
+        super(webClient);
+        this.allowed = lowerCase(allowed);
+        this.denied = lowerCase(denied);
+    }
+    
+    @Override
+    public WebResponse getResponse(WebRequest request) throws IOException {
+        if (isBlocked(request.getUrl().toString())) {
+            blockedRequests.incrementAndGet();
+            WebResponseData empty = new WebResponseData(new byte[0], 200, "OK", EMPTY_HEADERS);
+            return new WebResponse(empty, request, 0);
+        }
+        
+        WebResponse response = super.getResponse(request);
+        allowedRequests.incrementAndGet();
+        allowedBytes.addAndGet(Math.max(0, response.getContentLength()));
+        return response;
+    }
+    
+    public boolean isBlocked(String url) {
+        String candidate = url.toLowerCase(Locale.ROOT);
+        return denied.stream().anyMatch(candidate::contains) && allowed.stream().noneMatch(candidate::contains);
+    }
+    
+    public Stats getStats() {
+        return new Stats(allowedRequests.get(), allowedBytes.get(), blockedRequests.get());
+    }
+    
+    public void resetStats() {
+        allowedRequests.set(0);
+        allowedBytes.set(0);
+        blockedRequests.set(0);
+    }
+    
+    private static List<String> lowerCase(List<String> patterns) {
+        return patterns.stream()
+                .filter(pattern -> !pattern.isBlank())
+                .map(pattern -> pattern.trim().toLowerCase(Locale.ROOT))
+                .toList();
+    }
+    
+    /**
+     * Requests of one render. Only bytes of allowed responses are known; blocked
+     * resources are never fetched, so their size is not counted.
+     */
+    public record Stats(long allowedRequests, long allowedBytes, long blockedRequests) {
+    }
+}
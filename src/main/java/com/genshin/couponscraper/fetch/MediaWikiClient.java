@@ -0,0 +1,143 @@
+package com.genshin.couponscraper.fetch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fetches single sections of a MediaWiki article through {@code api.php?action=parse},
+ * so a scraper downloads and parses the codes section instead of the whole rendered
+ * page with its navigation, ads and sidebars.
+ * <p>
+ * Sections are addressed by heading. The heading is resolved to a section number with
+ * a {@code prop=sections} request, and the number is reused for
+ * {@code coupon.wiki.section-index-ttl}. A section whose HTML no longer carries the
+ * heading's anchor, e.g. because sections were reordered, or no longer holds the
+ * scraper's tables is resolved again on the next fetch. Section responses are
+ * revalidated like pages through {@link PageFetcher}.
+ */
+@Component
+public class MediaWikiClient {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MediaWikiClient.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private final PageFetcher pageFetcher;
+    private final Duration sectionIndexTtl;
+    private final Map<String, ResolvedSection> resolvedSections = new ConcurrentHashMap<>();
+    
+    public MediaWikiClient(PageFetcher pageFetcher, CouponScraperProperties properties) {
+        this.pageFetcher = pageFetcher;
+        this.sectionIndexTtl = properties.getWiki().getSectionIndexTtl();
+    }
+    
+    /**
+     * Parses the section of {@code page} titled {@code heading}, or the lead section
+     * when {@code heading} is empty. Returns empty when the article has no such section
+     * or the section does not contain the tables in {@code scope}.
+     *
+     * @param apiUrl the wiki's {@code api.php} endpoint
+     * @param scope  the part of the section's HTML {@code parser} reads
+     */
+    public <T> Optional<T> fetchSection(String apiUrl, String page, String heading, long readTimeoutMillis,
+                                        ParseScope scope, DocumentParser<T> parser) throws IOException {
+        String key = apiUrl + "|" + page + "|" + heading;
+        ResolvedSection section = resolvedSections.get(key);
+        if (section == null || section.isExpired(sectionIndexTtl)) {
+            // The lead section, above the first heading, has no anchor to check
+            section = heading.isEmpty()
+                    ? new ResolvedSection("0", null)
+                    : resolveSection(apiUrl, page, heading, readTimeoutMillis);
+            resolvedSections.put(key, section);
+        }
+        if (section.index == null) {
+            return Optional.empty();
+        }
+        
+        String sectionUrl = apiUrl + "?action=parse&format=json&formatversion=2&prop=text"
+                + "&disablelimitreport=1&disableeditsection=1&disabletoc=1"
+                + "&page=" + encode(page) + "&section=" + section.index;
+        String anchor = section.anchor;
+        Optional<T> parsed = pageFetcher.fetchDecoded(sectionUrl, readTimeoutMillis, ContentRegion.WHOLE_BODY,
+                (body, url) -> {
+                    String html = sectionHtml(objectMapper.readTree(body));
+                    if (html == null || (anchor != null && !html.contains("id=\"" + anchor + "\""))) {
+                        return Optional.empty();
+                    }
+                    if (scope == ParseScope.WHOLE_PAGE) {
+                        return Optional.of(parser.parse(Jsoup.parse(html, url)));
+                    }
+                    // A section without the target table means the codes moved elsewhere on the page
+                    String fragment = scope.fragment(html);
+                    return fragment == null ? Optional.empty() : Optional.of(parser.parse(Jsoup.parse(fragment, url)));
+                });
+        
+        if (parsed.isEmpty()) {
+            logger.info("Section {} of {} no longer holds \"{}\", resolving it again", section.index, page, heading);
+            resolvedSections.remove(key);
+        }
+        return parsed;
+    }
+    
+    private ResolvedSection resolveSection(String apiUrl, String page, String heading, long readTimeoutMillis)
+            throws IOException {
+        String sectionsUrl = apiUrl + "?action=parse&format=json&formatversion=2&prop=sections&page=" + encode(page);
+        JsonNode sections = objectMapper.readTree(pageFetcher.fetch(sectionsUrl, readTimeoutMillis).getBody())
+                .path("parse").path("sections");
+        
+        String anchor = heading.replace(' ', '_');
+        for (JsonNode section : sections) {
+            String line = Jsoup.parseBodyFragment(section.path("line").asText()).text();
+            if (line.equalsIgnoreCase(heading) || anchor.equals(section.path("anchor").asText())) {
+                logger.debug("Resolved \"{}\" of {} to section {}", heading, page, section.path("index").asText());
+                return new ResolvedSection(section.path("index").asText(), section.path("anchor").asText());
+            }
+        }
+        
+        logger.info("{} has no section \"{}\"", page, heading);
+        return new ResolvedSection(null, null);
+    }
+    
+    /** The section HTML of a {@code prop=text} response, in either JSON format version. */
+    private static String sectionHtml(JsonNode response) {
+        JsonNode text = response.path("parse").path("text");
+        if (text.isTextual()) {
+            return text.asText();
+        }
+        JsonNode legacyText = text.path("*");
+        return legacyText.isTextual() ? legacyText.asText() : null;
+    }
+    
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+    
+    private static class ResolvedSection {
+        
+        final String index;
+        final String anchor;
+        final Instant resolvedAt = Instant.now();
+        
+        ResolvedSection(String index, String anchor) {
+            this.index = index;
+            this.anchor = anchor;
+        }
+        
+        boolean isExpired(Duration ttl) {
+            return resolvedAt.plus(ttl).isBefore(Instant.now());
+        }
+    }
+}
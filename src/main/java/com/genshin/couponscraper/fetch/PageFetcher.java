@@ -0,0 +1,250 @@
+package com.genshin.couponscraper.fetch;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.jsoup.HttpStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared HTTP client for all upstream page fetches.
+ * <p>
+ * Connections are pooled and kept alive per host, so repeated fetches from the
+ * fandom.com scrapers reuse TLS sessions instead of handshaking every time. Responses
+ * are requested with {@code Accept-Encoding: gzip, deflate} and decoded transparently.
+ * Callers either take the raw body from {@link #fetch} or let {@link #fetchParsed}
+ * parse it and revalidate on later fetches.
+ */
+@Component
+public class PageFetcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PageFetcher.class);
+    
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final CouponScraperProperties.Http settings;
+    private final Map<String, CachedPage> cachedPages = new ConcurrentHashMap<>();
+    private final Map<String, RevalidationStats> revalidationStats = new ConcurrentHashMap<>();
+    
+    public PageFetcher(CouponScraperProperties properties) {
+        this.settings = properties.getHttp();
+        
+        this.connectionManager = new PoolingHttpClientConnectionManager(
+                settings.getConnectionTimeToLive().toMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(settings.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerHost());
+        connectionManager.setValidateAfterInactivity(2000);
+        
+        long maxKeepAliveMillis = settings.getKeepAlive().toMillis();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setUserAgent(settings.getUserAgent())
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, maxKeepAliveMillis) : maxKeepAliveMillis;
+                })
+                .setDefaultRequestConfig(requestConfig(settings.getReadTimeout().toMillis()))
+                .evictExpiredConnections()
+                .evictIdleConnections(settings.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+    
+    public FetchedPage fetch(String url, long readTimeoutMillis) throws IOException {
+        HttpGet request = new HttpGet(url);
+        request.setConfig(requestConfig(readTimeoutMillis));
+        
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status < 200 || status >= 300) {
+                EntityUtils.consumeQuietly(entity);
+                throw new HttpStatusException("HTTP error fetching URL", status, url);
+            }
+            
+            String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+            logger.debug("Fetched {} ({} chars) in {} ms", url, body.length(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new FetchedPage(url, status, body);
+        }
+    }
+    
+    public <T> T fetchParsed(String url, long readTimeoutMillis, DocumentParser<T> parser) throws IOException {
+        return fetchParsed(url, readTimeoutMillis, ContentRegion.WHOLE_BODY, parser);
+    }
+    
+    /**
+     * Fetches {@code url} and parses it, reusing the previous result when the page has
+     * not changed.
+     * <p>
+     * The {@code ETag} and {@code Last-Modified} of the last parsed response are sent
+     * back as {@code If-None-Match} / {@code If-Modified-Since}; on a 304 the previously
+     * parsed result is returned without downloading or parsing the page. For sites that
+     * send no usable validators, a full response whose {@code region} hashes the same as
+     * last time is also answered from the previous result, skipping DOM building and
+     * the parser entirely.
+     */
+    public <T> T fetchParsed(String url, long readTimeoutMillis, ContentRegion region,
+                             DocumentParser<T> parser) throws IOException {
+        return fetchParsed(url, readTimeoutMillis, region, ParseScope.WHOLE_PAGE, parser);
+    }
+    
+    /**
+     * Like {@link #fetchParsed(String, long, ContentRegion, DocumentParser)}, but only the
+     * part of the page in {@code scope} is parsed into the document handed to
+     * {@code parser}.
+     */
+    public <T> T fetchParsed(String url, long readTimeoutMillis, ContentRegion region, ParseScope scope,
+                             DocumentParser<T> parser) throws IOException {
+        return fetchDecoded(url, readTimeoutMillis, region, (body, pageUrl) -> parser.parse(scope.parse(body, pageUrl)));
+    }
+    
+    /**
+     * Like {@link #fetchParsed(String, long, ContentRegion, DocumentParser)} for responses
+     * that {@code parser} decodes from the raw body, such as API responses.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T fetchDecoded(String url, long readTimeoutMillis, ContentRegion region,
+                              BodyParser<T> parser) throws IOException {
+        CachedPage cached = cachedPages.get(url);
+        RevalidationStats stats = revalidationStats.computeIfAbsent(url, u -> new RevalidationStats());
+        boolean conditional = cached != null && cached.hasValidators();
+        
+        HttpGet request = new HttpGet(url);
+        request.setConfig(requestConfig(readTimeoutMillis));
+        if (conditional) {
+            if (cached.etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+            }
+        }
+        
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            
+            if (status == HttpStatus.SC_NOT_MODIFIED && conditional) {
+                EntityUtils.consumeQuietly(entity);
+                stats.notModified.increment();
+                logger.debug("{} not modified, reusing previous result", url);
+                return (T) cached.parsed;
+            }
+            if (status < 200 || status >= 300) {
+                EntityUtils.consumeQuietly(entity);
+                throw new HttpStatusException("HTTP error fetching URL", status, url);
+            }
+            
+            String body = entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+            logger.debug("Fetched {} ({} chars) in {} ms", url, body.length(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            (conditional ? stats.modified : stats.unconditional).increment();
+            
+            String etag = headerValue(response, HttpHeaders.ETAG);
+            String lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+            String fingerprint = region.fingerprint(body);
+            
+            if (cached != null && fingerprint.equals(cached.fingerprint)) {
+                stats.unchangedContent.increment();
+                logger.debug("{} content unchanged, skipping parse", url);
+                cachedPages.put(url, new CachedPage(etag, lastModified, fingerprint, cached.parsed));
+                return (T) cached.parsed;
+            }
+            
+            T parsed = parser.parse(body, url);
+            cachedPages.put(url, new CachedPage(etag, lastModified, fingerprint, parsed));
+            return parsed;
+        }
+    }
+    
+    /**
+     * Per-URL revalidation outcomes: {@code notModified} (304, result reused),
+     * {@code modified} (validators sent but a full page came back),
+     * {@code unconditional} (no validators known) and {@code unchangedContent}
+     * (full page whose content region matched the last one, parse skipped).
+     */
+    public Map<String, Map<String, Long>> getRevalidationStats() {
+        Map<String, Map<String, Long>> result = new TreeMap<>();
+        revalidationStats.forEach((url, stats) -> result.put(url, stats.toMap()));
+        return result;
+    }
+    
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+    }
+    
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null || header.getValue().isBlank() ? null : header.getValue();
+    }
+    
+    private static class CachedPage {
+        
+        final String etag;
+        final String lastModified;
+        final String fingerprint;
+        final Object parsed;
+        
+        CachedPage(String etag, String lastModified, String fingerprint, Object parsed) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fingerprint = fingerprint;
+            this.parsed = parsed;
+        }
+        
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+    }
+    
+    private static class RevalidationStats {
+        
+        final LongAdder notModified = new LongAdder();
+        final LongAdder modified = new LongAdder();
+        final LongAdder unconditional = new LongAdder();
+        final LongAdder unchangedContent = new LongAdder();
+        
+        Map<String, Long> toMap() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            map.put("notModified", notModified.sum());
+            map.put("modified", modified.sum());
+            map.put("unconditional", unconditional.sum());
+            map.put("unchangedContent", unchangedContent.sum());
+            return map;
+        }
+    }
+    
+    private RequestConfig requestConfig(long readTimeoutMillis) {
+        return RequestConfig.custom()
+                .setConnectTimeout((int) settings.getConnectTimeout().toMillis())
+                .setConnectionRequestTimeout((int) settings.getConnectionRequestTimeout().toMillis())
+                .setSocketTimeout((int) readTimeoutMillis)
+                .build();
+    }
+}
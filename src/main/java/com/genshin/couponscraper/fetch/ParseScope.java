@@ -0,0 +1,305 @@
+package com.genshin.couponscraper.fetch;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The part of a raw HTML page a parser actually reads, so the rest of the page never
+ * becomes DOM.
+ * <p>
+ * {@link #tables} scopes parsing to the tables matching simple {@code table#id} /
+ * {@code table.class} selectors. A single forward scan over the raw body finds their
+ * start tags, follows nested tables to the matching {@code </table>}, skips comments,
+ * scripts and styles, and only those tables are handed to Jsoup, in page order. When
+ * no table matches, or one is never closed, the whole page is parsed instead, so
+ * selecting the same tables from the scoped document gives the same elements either
+ * way.
+ */
+public class ParseScope {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ParseScope.class);
+    
+    public static final ParseScope WHOLE_PAGE = new ParseScope(List.of());
+    
+    private static final String[] RAW_TEXT_TAGS = {"script", "style", "title", "textarea"};
+    
+    private final List<TableMatcher> matchers;
+    
+    private ParseScope(List<TableMatcher> matchers) {
+        this.matchers = matchers;
+    }
+    
+    /**
+     * Scopes parsing to the tables matching any of {@code selectors}, each a
+     * {@code table} tag optionally followed by {@code #id} and {@code .class} parts.
+     */
+    public static ParseScope tables(String... selectors) {
+        return new ParseScope(Arrays.stream(selectors).map(TableMatcher::parse).toList());
+    }
+    
+    public Document parse(String body, String url) {
+        String fragment = fragment(body);
+        if (fragment == null) {
+            if (!matchers.isEmpty()) {
+                logger.debug("No complete target table in {}, parsing the whole page", url);
+            }
+            return Jsoup.parse(body, url);
+        }
+        return Jsoup.parse(fragment, url);
+    }
+    
+    /**
+     * The matching tables of {@code body} concatenated in page order, or {@code null}
+     * when the whole page has to be parsed.
+     */
+    String fragment(String body) {
+        if (matchers.isEmpty()) {
+            return null;
+        }
+        
+        StringBuilder fragment = new StringBuilder();
+        int captureStart = -1;
+        int depth = 0;
+        int pos = body.indexOf('<');
+        
+        while (pos >= 0) {
+            if (body.startsWith("<!--", pos)) {
+                int end = body.indexOf("-->", pos + 4);
+                if (end < 0) {
+                    break;
+                }
+                pos = body.indexOf('<', end + 3);
+                continue;
+            }
+            
+            boolean endTag = body.startsWith("</", pos);
+            int nameStart = endTag ? pos + 2 : pos + 1;
+            if (nameStart >= body.length() || !isAsciiLetter(body.charAt(nameStart))) {
+                pos = body.indexOf('<', pos + 1);
+                continue;
+            }
+            int tagEnd = tagEnd(body, nameStart);
+            if (tagEnd < 0) {
+                break;
+            }
+            
+            if (!endTag) {
+                String rawTextTag = rawTextTag(body, nameStart);
+                if (rawTextTag != null) {
+                    int end = closingTag(body, tagEnd + 1, rawTextTag);
+                    if (end < 0) {
+                        break;
+                    }
+                    pos = body.indexOf('<', end);
+                    continue;
+                }
+                if (isTag(body, nameStart, "table")) {
+                    if (captureStart >= 0) {
+                        depth++;
+                    } else if (matches(body, nameStart + "table".length(), tagEnd)) {
+                        captureStart = pos;
+                        depth = 1;
+                    }
+                }
+            } else if (captureStart >= 0 && isTag(body, nameStart, "table") && --depth == 0) {
+                fragment.append(body, captureStart, tagEnd + 1);
+                captureStart = -1;
+            }
+            pos = body.indexOf('<', tagEnd + 1);
+        }
+        
+        // Nothing matched, or the last match was never closed
+        if (captureStart >= 0 || fragment.isEmpty()) {
+            return null;
+        }
+        return fragment.toString();
+    }
+    
+    private boolean matches(String body, int attributesStart, int tagEnd) {
+        String id = null;
+        String classes = null;
+        
+        int pos = attributesStart;
+        while (pos < tagEnd) {
+            while (pos < tagEnd && (isSpace(body.charAt(pos)) || body.charAt(pos) == '/')) {
+                pos++;
+            }
+            int nameStart = pos;
+            while (pos < tagEnd && !isSpace(body.charAt(pos)) && body.charAt(pos) != '=' && body.charAt(pos) != '/') {
+                pos++;
+            }
+            String name = body.substring(nameStart, pos);
+            while (pos < tagEnd && isSpace(body.charAt(pos))) {
+                pos++;
+            }
+            
+            String value = "";
+            if (pos < tagEnd && body.charAt(pos) == '=') {
+                pos++;
+                while (pos < tagEnd && isSpace(body.charAt(pos))) {
+                    pos++;
+                }
+                if (pos < tagEnd && (body.charAt(pos) == '"' || body.charAt(pos) == '\'')) {
+                    int close = body.indexOf(body.charAt(pos), pos + 1);
+                    if (close < 0 || close > tagEnd) {
+                        // Unclosed quote: not a tag the parser would read the same way
+                        return false;
+                    }
+                    value = body.substring(pos + 1, close);
+                    pos = close + 1;
+                } else {
+                    int valueStart = pos;
+                    while (pos < tagEnd && !isSpace(body.charAt(pos))) {
+                        pos++;
+                    }
+                    value = body.substring(valueStart, pos);
+                }
+                if (value.indexOf('&') >= 0) {
+                    value = Parser.unescapeEntities(value, true);
+                }
+            }
+            
+            // The first occurrence of an attribute wins, as in the HTML parser
+            if (id == null && name.equalsIgnoreCase("id")) {
+                id = value;
+            } else if (classes == null && name.equalsIgnoreCase("class")) {
+                classes = value;
+            }
+        }
+        
+        for (TableMatcher matcher : matchers) {
+            if (matcher.matches(id, classes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** The index of the {@code >} ending the tag whose name starts at {@code pos}, skipping quoted attribute values. */
+    private static int tagEnd(String body, int pos) {
+        while (pos < body.length()) {
+            char c = body.charAt(pos);
+            if (c == '>') {
+                return pos;
+            }
+            pos++;
+            if (c == '=') {
+                while (pos < body.length() && isSpace(body.charAt(pos))) {
+                    pos++;
+                }
+                if (pos < body.length() && (body.charAt(pos) == '"' || body.charAt(pos) == '\'')) {
+                    int close = body.indexOf(body.charAt(pos), pos + 1);
+                    if (close < 0) {
+                        return -1;
+                    }
+                    pos = close + 1;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /** The raw text element (script, style, title, textarea) named at {@code pos}, whose content is not markup. */
+    private static String rawTextTag(String body, int pos) {
+        for (String tag : RAW_TEXT_TAGS) {
+            if (isTag(body, pos, tag)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+    
+    /** The index just past the first {@code </tag} at or after {@code from}, or -1. */
+    private static int closingTag(String body, int from, String tag) {
+        int search = from;
+        while (true) {
+            int close = body.indexOf("</", search);
+            if (close < 0) {
+                return -1;
+            }
+            if (isTag(body, close + 2, tag)) {
+                return close + 2 + tag.length();
+            }
+            search = close + 2;
+        }
+    }
+    
+    /** Whether {@code body} has the tag name {@code tag} at {@code pos}, ignoring case. */
+    private static boolean isTag(String body, int pos, String tag) {
+        if (!body.regionMatches(true, pos, tag, 0, tag.length())) {
+            return false;
+        }
+        int after = pos + tag.length();
+        if (after >= body.length()) {
+            return false;
+        }
+        char c = body.charAt(after);
+        return isSpace(c) || c == '>' || c == '/';
+    }
+    
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+    
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+    
+    private record TableMatcher(String id, Set<String> classes) {
+        
+        static TableMatcher parse(String selector) {
+            if (!selector.startsWith("table")) {
+                throw new IllegalArgumentException("Unsupported table selector: " + selector);
+            }
+            
+            String id = null;
+            List<String> classes = new ArrayList<>();
+            int pos = "table".length();
+            while (pos < selector.length()) {
+                char kind = selector.charAt(pos);
+                int end = pos + 1;
+                while (end < selector.length() && selector.charAt(end) != '.' && selector.charAt(end) != '#') {
+                    end++;
+                }
+                String name = selector.substring(pos + 1, end);
+                if (name.isEmpty() || name.chars().anyMatch(c -> isSpace((char) c) || "[]:>+~,()\\".indexOf(c) >= 0)) {
+                    throw new IllegalArgumentException("Unsupported table selector: " + selector);
+                }
+                if (kind == '#') {
+                    id = name;
+                } else {
+                    classes.add(name.toLowerCase(Locale.ROOT));
+                }
+                pos = end;
+            }
+            return new TableMatcher(id, Set.copyOf(classes));
+        }
+        
+        boolean matches(String tableId, String tableClasses) {
+            // Ids compare case-sensitively and classes case-insensitively, like Jsoup's selectors
+            if (id != null && !id.equals(tableId)) {
+                return false;
+            }
+            if (classes.isEmpty()) {
+                return true;
+            }
+            if (tableClasses == null) {
+                return false;
+            }
+            Set<String> present = Arrays.stream(tableClasses.split("[ \t\n\r\f]+"))
+                    .map(c -> c.toLowerCase(Locale.ROOT))
+                    .collect(Collectors.toSet());
+            return present.containsAll(classes);
+        }
+    }
+}
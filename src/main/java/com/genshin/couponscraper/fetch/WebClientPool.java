@@ -0,0 +1,291 @@
+package com.genshin.couponscraper.fetch;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded pool of pre-configured HtmlUnit browsers for JavaScript rendering.
+ * <p>
+ * Booting a {@link WebClient} and its Rhino engine is expensive, so clients are created
+ * at most {@code pool-size} at a time, warmed on startup, leased for one render and
+ * then reset to {@code about:blank} and returned. A client is closed instead of
+ * returned once it has served {@code max-uses} renders, when the JVM heap is above
+ * {@code max-heap-usage}, or when it failed its health check or a render.
+ * <p>
+ * Every client talks through a {@link FilteringWebConnection}, so third-party scripts,
+ * fonts and images matching {@code blocked-resources} are never downloaded.
+ */
+@Component
+public class WebClientPool {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WebClientPool.class);
+    private static final String BLANK_PAGE = "about:blank";
+    
+    private final CouponScraperProperties.HtmlUnit settings;
+    private final BlockingQueue<PooledClient> idle = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private final LongAdder created = new LongAdder();
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder recycled = new LongAdder();
+    private final LongAdder blockedRequests = new LongAdder();
+    private final LongAdder allowedBytes = new LongAdder();
+    private volatile boolean closed;
+    
+    public WebClientPool(CouponScraperProperties properties) {
+        this.settings = properties.getHtmlUnit();
+        this.permits = new Semaphore(Math.max(1, settings.getPoolSize()));
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        int count = Math.min(settings.getPrewarm(), settings.getPoolSize());
+        for (int i = 0; i < count; i++) {
+            try {
+                idle.offer(createClient());
+            } catch (Exception e) {
+                logger.warn("Failed to pre-warm HtmlUnit client: {}", e.getMessage());
+                return;
+            }
+        }
+        if (count > 0) {
+            logger.info("Pre-warmed {} HtmlUnit clients", count);
+        }
+    }
+    
+    /**
+     * Borrows a healthy client, creating one if none is idle. Blocks while all
+     * {@code pool-size} clients are leased, up to {@code lease-timeout}.
+     */
+    public Lease lease() throws IOException {
+        if (closed) {
+            throw new IOException("HtmlUnit client pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(settings.getLeaseTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("No HtmlUnit client available within " + settings.getLeaseTimeout());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an HtmlUnit client", e);
+        }
+        
+        try {
+            PooledClient client;
+            while ((client = idle.poll()) != null) {
+                if (isHealthy(client)) {
+                    break;
+                }
+                discard(client, "failed health check");
+            }
+            if (client == null) {
+                client = createClient();
+            }
+            leases.increment();
+            client.connection.resetStats();
+            return new Lease(client);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", settings.getPoolSize());
+        stats.put("idle", idle.size());
+        stats.put("leased", settings.getPoolSize() - permits.availablePermits());
+        stats.put("created", created.sum());
+        stats.put("recycled", recycled.sum());
+        stats.put("leases", leases.sum());
+        stats.put("blockedRequests", blockedRequests.sum());
+        stats.put("allowedBytes", allowedBytes.sum());
+        return stats;
+    }
+    
+    @PreDestroy
+    public void close() {
+        closed = true;
+        PooledClient client;
+        while ((client = idle.poll()) != null) {
+            client.webClient.close();
+        }
+    }
+    
+    private PooledClient createClient() {
+        WebClient webClient = new WebClient(BrowserVersion.CHROME);
+        webClient.getOptions().setJavaScriptEnabled(true);
+        webClient.getOptions().setCssEnabled(false);
+        webClient.getOptions().setDownloadImages(false);
+        webClient.getOptions().setThrowExceptionOnScriptError(false);
+        webClient.getOptions().setThrowExceptionOnFailingStatusCode(false);
+        webClient.getOptions().setTimeout((int) settings.getTimeout().toMillis());
+        webClient.getOptions().setUseInsecureSSL(true);
+        webClient.addRequestHeader("User-Agent", settings.getUserAgent());
+        FilteringWebConnection connection = new FilteringWebConnection(
+                webClient, settings.getAllowedResources(), settings.getBlockedResources());
+        
+        try {
+            // Loading a blank page initializes the window and its JavaScript scope up front
+            webClient.getPage(BLANK_PAGE);
+        } catch (IOException e) {
+            webClient.close();
+            throw new IllegalStateException("Could not initialize HtmlUnit client", e);
+        }
+        created.increment();
+        return new PooledClient(webClient, connection);
+    }
+    
+    private boolean isHealthy(PooledClient client) {
+        WebWindow window = client.webClient.getCurrentWindow();
+        return window != null && window.getEnclosedPage() != null && client.webClient.getJavaScriptEngine() != null;
+    }
+    
+    private void giveBack(PooledClient client, boolean broken) {
+        try {
+            client.uses++;
+            FilteringWebConnection.Stats resources = client.connection.getStats();
+            blockedRequests.add(resources.blockedRequests());
+            allowedBytes.add(resources.allowedBytes());
+            if (closed) {
+                discard(client, "pool closed");
+            } else if (broken) {
+                discard(client, "render failed");
+            } else if (client.uses >= settings.getMaxUses()) {
+                discard(client, "reached " + settings.getMaxUses() + " uses");
+            } else if (heapUsage() > settings.getMaxHeapUsage()) {
+                discard(client, String.format("heap usage %.0f%%", heapUsage() * 100));
+            } else if (reset(client)) {
+                idle.offer(client);
+            } else {
+                discard(client, "reset failed");
+            }
+        } finally {
+            permits.release();
+        }
+    }
+    
+    private boolean reset(PooledClient client) {
+        try {
+            WebWindow window = client.webClient.getCurrentWindow();
+            if (window != null) {
+                window.getJobManager().removeAllJobs();
+            }
+            client.webClient.getCookieManager().clearCookies();
+            client.webClient.getPage(BLANK_PAGE);
+            return true;
+        } catch (Exception e) {
+            logger.debug("Failed to reset HtmlUnit client: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    private void discard(PooledClient client, String reason) {
+        logger.debug("Recycling HtmlUnit client after {} uses: {}", client.uses, reason);
+        recycled.increment();
+        try {
+            client.webClient.close();
+        } catch (Exception e) {
+            logger.debug("Error closing HtmlUnit client: {}", e.getMessage());
+        }
+    }
+    
+    private static double heapUsage() {
+        Runtime runtime = Runtime.getRuntime();
+        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    }
+    
+    private static class PooledClient {
+        
+        final WebClient webClient;
+        final FilteringWebConnection connection;
+        int uses;
+        
+        PooledClient(WebClient webClient, FilteringWebConnection connection) {
+            this.webClient = webClient;
+            this.connection = connection;
+        }
+    }
+    
+    /**
+     * A borrowed client. Closing the lease returns the client to the pool; call
+     * {@link #markBroken()} first if the render failed so it is replaced instead.
+     */
+    public class Lease implements AutoCloseable {
+        
+        private final PooledClient client;
+        private boolean broken;
+        private boolean released;
+        
+        private Lease(PooledClient client) {
+            this.client = client;
+        }
+        
+        public WebClient getWebClient() {
+            return client.webClient;
+        }
+        
+        /** Requests allowed and blocked by the resource filter during this lease. */
+        public FilteringWebConnection.Stats getResourceStats() {
+            return client.connection.getStats();
+        }
+        
+        /**
+         * Lets background JavaScript run until {@code ready} accepts the page's rendered
+         * text, checking every {@code render-poll-interval}. Returns how long that took,
+         * or empty if the page was not ready within {@code ceiling}.
+         */
+        public Optional<Duration> awaitReady(HtmlPage page, Predicate<String> ready, Duration ceiling) {
+            long started = System.nanoTime();
+            long deadline = started + ceiling.toNanos();
+            long pollMillis = Math.max(1, settings.getRenderPollInterval().toMillis());
+            
+            while (true) {
+                if (ready.test(page.asNormalizedText())) {
+                    return Optional.of(Duration.ofNanos(System.nanoTime() - started));
+                }
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return Optional.empty();
+                }
+                int pendingJobs = client.webClient.waitForBackgroundJavaScript(Math.min(pollMillis, remainingMillis));
+                if (pendingJobs == 0 && !ready.test(page.asNormalizedText())) {
+                    // Nothing left to run, so the page will not change any more
+                    return Optional.empty();
+                }
+            }
+        }
+        
+        public void markBroken() {
+            broken = true;
+        }
+        
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                giveBack(client, broken);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.genshin.couponscraper.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AggregateCouponResponse {
+    
+    @JsonProperty("coupons")
+    private final Map<String, List<CouponResponse>> coupons = new LinkedHashMap<>();
+    
+    @JsonProperty("sources")
+    private final Map<String, SourceStatus> sources = new LinkedHashMap<>();
+    
+    public Map<String, List<CouponResponse>> getCoupons() {
+        return coupons;
+    }
+    
+    public Map<String, SourceStatus> getSources() {
+        return sources;
+    }
+    
+    public void addCoupons(Game game, List<CouponResponse> gameCoupons) {
+        coupons.put(game.getSlug(), gameCoupons);
+        sources.put(game.getSlug(), SourceStatus.ok(gameCoupons.size()));
+    }
+    
+    public void addFailure(Game game, SourceStatus status) {
+        sources.put(game.getSlug(), status);
+    }
+    
+    public static class SourceStatus {
+        
+        public static final String OK = "OK";
+        public static final String TIMEOUT = "TIMEOUT";
+        public static final String ERROR = "ERROR";
+        
+        @JsonProperty("status")
+        private final String status;
+        
+        @JsonProperty("count")
+        private final Integer count;
+        
+        @JsonProperty("message")
+        private final String message;
+        
+        private SourceStatus(String status, Integer count, String message) {
+            this.status = status;
+            this.count = count;
+            this.message = message;
+        }
+        
+        public static SourceStatus ok(int count) {
+            return new SourceStatus(OK, count, null);
+        }
+        
+        public static SourceStatus timeout(long budgetMillis) {
+            return new SourceStatus(TIMEOUT, null, "No result within " + budgetMillis + " ms");
+        }
+        
+        public static SourceStatus error(String message) {
+            return new SourceStatus(ERROR, null, message);
+        }
+        
+        public String getStatus() {
+            return status;
+        }
+        
+        public Integer getCount() {
+            return count;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+    }
+}
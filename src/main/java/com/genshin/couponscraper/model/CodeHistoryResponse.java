@@ -0,0 +1,84 @@
+package com.genshin.couponscraper.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Answers of the {@code /craw/history} endpoints: the codes a game had at one point
+ * in time, or the codes it gained and lost between two.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CodeHistoryResponse {
+    
+    @JsonProperty("game")
+    private final String game;
+    
+    @JsonProperty("from")
+    private final Instant from;
+    
+    @JsonProperty("to")
+    private final Instant to;
+    
+    @JsonProperty("at")
+    private final Instant at;
+    
+    @JsonProperty("codes")
+    private final List<String> codes;
+    
+    @JsonProperty("added")
+    private final List<String> added;
+    
+    @JsonProperty("removed")
+    private final List<String> removed;
+    
+    private CodeHistoryResponse(Game game, Instant from, Instant to, Instant at,
+                                List<String> codes, List<String> added, List<String> removed) {
+        this.game = game.getSlug();
+        this.from = from;
+        this.to = to;
+        this.at = at;
+        this.codes = codes;
+        this.added = added;
+        this.removed = removed;
+    }
+    
+    public static CodeHistoryResponse activeAt(Game game, Instant at, List<String> codes) {
+        return new CodeHistoryResponse(game, null, null, at, codes, null, null);
+    }
+    
+    public static CodeHistoryResponse changes(Game game, Instant from, Instant to,
+                                              List<String> added, List<String> removed) {
+        return new CodeHistoryResponse(game, from, to, null, null, added, removed);
+    }
+    
+    public String getGame() {
+        return game;
+    }
+    
+    public Instant getFrom() {
+        return from;
+    }
+    
+    public Instant getTo() {
+        return to;
+    }
+    
+    public Instant getAt() {
+        return at;
+    }
+    
+    public List<String> getCodes() {
+        return codes;
+    }
+    
+    public List<String> getAdded() {
+        return added;
+    }
+    
+    public List<String> getRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,48 @@
+package com.genshin.couponscraper.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Data of a {@code /craw/stream} change event: the codes a refresh found that the
+ * previous snapshot of the game did not have, and the other way around.
+ */
+public class CouponChangeEvent {
+    
+    @JsonProperty("game")
+    private final String game;
+    
+    @JsonProperty("added")
+    private final List<String> added;
+    
+    @JsonProperty("removed")
+    private final List<String> removed;
+    
+    @JsonProperty("detectedAt")
+    private final Instant detectedAt;
+    
+    public CouponChangeEvent(Game game, List<String> added, List<String> removed, Instant detectedAt) {
+        this.game = game.getSlug();
+        this.added = added;
+        this.removed = removed;
+        this.detectedAt = detectedAt;
+    }
+    
+    public String getGame() {
+        return game;
+    }
+    
+    public List<String> getAdded() {
+        return added;
+    }
+    
+    public List<String> getRemoved() {
+        return removed;
+    }
+    
+    public Instant getDetectedAt() {
+        return detectedAt;
+    }
+}
@@ -0,0 +1,81 @@
+package com.genshin.couponscraper.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Immutable result of one successful scrape of a game's coupon page.
+ */
+public class CouponSnapshot {
+    
+    private final Game game;
+    private final List<CouponResponse> coupons;
+    private final Instant fetchedAt;
+    private final String eTag;
+    
+    public CouponSnapshot(Game game, List<CouponResponse> coupons, Instant fetchedAt) {
+        this.game = game;
+        this.coupons = List.copyOf(coupons);
+        this.fetchedAt = fetchedAt;
+        this.eTag = computeETag(this.coupons);
+    }
+    
+    public Game getGame() {
+        return game;
+    }
+    
+    public List<CouponResponse> getCoupons() {
+        return coupons;
+    }
+    
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+    
+    /**
+     * Strong entity tag over the coupon contents, so it only changes when the served
+     * list does, not on every refresh.
+     */
+    public String getETag() {
+        return eTag;
+    }
+    
+    public Duration age() {
+        return Duration.between(fetchedAt, Instant.now());
+    }
+    
+    public boolean isOlderThan(Duration ttl) {
+        return age().compareTo(ttl) > 0;
+    }
+    
+    private static String computeETag(List<CouponResponse> coupons) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (CouponResponse coupon : coupons) {
+                for (String field : new String[]{coupon.getCode(), coupon.getReward(), coupon.getDate(),
+                        coupon.getStatus(), coupon.getServer(), coupon.getRaw()}) {
+                    digest.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                }
+                digest.update((byte) '\n');
+            }
+            return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "CouponSnapshot{" +
+                "game=" + game +
+                ", coupons=" + coupons.size() +
+                ", fetchedAt=" + fetchedAt +
+                '}';
+    }
+}
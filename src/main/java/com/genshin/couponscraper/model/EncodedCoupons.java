@@ -0,0 +1,157 @@
+package com.genshin.couponscraper.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A snapshot's JSON body, serialized once and kept in every content encoding we serve.
+ * Each encoding gets its own strong ETag, derived from the snapshot's.
+ */
+public class EncodedCoupons {
+    
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String IDENTITY = "identity";
+    
+    private final String eTag;
+    private final Representation identity;
+    private final Representation gzip;
+    private final Representation deflate;
+    
+    private EncodedCoupons(String eTag, byte[] json) {
+        this.eTag = eTag;
+        this.identity = new Representation(IDENTITY, eTag, json);
+        this.gzip = new Representation(GZIP, suffixed(eTag, "gz"), gzip(json));
+        this.deflate = new Representation(DEFLATE, suffixed(eTag, "df"), deflate(json));
+    }
+    
+    public static EncodedCoupons of(String eTag, byte[] json) {
+        return new EncodedCoupons(eTag, json);
+    }
+    
+    public String getETag() {
+        return eTag;
+    }
+    
+    public Representation getIdentity() {
+        return identity;
+    }
+    
+    /**
+     * Picks the smallest representation the client accepts according to its
+     * {@code Accept-Encoding} header, falling back to the uncompressed body.
+     */
+    public Representation select(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return identity;
+        }
+        
+        boolean acceptsGzip = false;
+        boolean acceptsDeflate = false;
+        for (String token : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] parts = token.trim().split(";");
+            String coding = parts[0].trim();
+            if (isRejected(parts)) {
+                continue;
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip") || coding.equals("*")) {
+                acceptsGzip = true;
+            }
+            if (coding.equals(DEFLATE) || coding.equals("*")) {
+                acceptsDeflate = true;
+            }
+        }
+        
+        Representation best = identity;
+        if (acceptsGzip && gzip.size() < best.size()) {
+            best = gzip;
+        }
+        if (acceptsDeflate && deflate.size() < best.size()) {
+            best = deflate;
+        }
+        return best;
+    }
+    
+    private static boolean isRejected(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private static String suffixed(String eTag, String suffix) {
+        return eTag.substring(0, eTag.length() - 1) + "-" + suffix + "\"";
+    }
+    
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+    
+    private static byte[] deflate(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(out, deflater)) {
+            stream.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+    
+    public static class Representation {
+        
+        private final String encoding;
+        private final String eTag;
+        private final byte[] body;
+        
+        Representation(String encoding, String eTag, byte[] body) {
+            this.encoding = encoding;
+            this.eTag = eTag;
+            this.body = body;
+        }
+        
+        public String getEncoding() {
+            return encoding;
+        }
+        
+        public String getETag() {
+            return eTag;
+        }
+        
+        public byte[] getBody() {
+            return body;
+        }
+        
+        public int size() {
+            return body.length;
+        }
+        
+        public boolean isCompressed() {
+            return !IDENTITY.equals(encoding);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.genshin.couponscraper.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+public enum Game {
+    
+    GENSHIN("genshin", "Genshin Impact"),
+    HONKAI_STAR_RAIL("honkai-star-rail", "Honkai Star Rail"),
+    BLOX_FRUITS("blox-fruits", "Blox Fruits"),
+    PLAY_TOGETHER("play-together", "Play Together"),
+    FC_MOBILE("fc-mobile", "FC Mobile");
+    
+    private final String slug;
+    private final String displayName;
+    
+    Game(String slug, String displayName) {
+        this.slug = slug;
+        this.displayName = displayName;
+    }
+    
+    public String getSlug() {
+        return slug;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public static Optional<Game> fromSlug(String slug) {
+        return Arrays.stream(values())
+                .filter(game -> game.slug.equalsIgnoreCase(slug))
+                .findFirst();
+    }
+}
@@ -0,0 +1,164 @@
+package com.genshin.couponscraper.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stops calling a source that keeps failing.
+ * <p>
+ * The breaker starts {@link State#CLOSED}. After {@code failureThreshold} consecutive
+ * failures (timeouts included) it opens, and calls fail at once with a
+ * {@link CircuitOpenException} instead of waiting on the source. Once
+ * {@code openDuration} has passed the next call is let through as a single
+ * {@link State#HALF_OPEN} probe while other callers keep failing fast; a successful
+ * probe closes the breaker, a failed one opens it again. The most recent state
+ * transitions are kept for the health endpoint.
+ */
+public class CircuitBreaker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    private static final int MAX_TRANSITIONS = 10;
+    
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+    
+    /** A state change, with the failure or probe result that caused it. */
+    public record Transition(State from, State to, Instant at, String reason) {
+    }
+    
+    private final String name;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    
+    private final Deque<Transition> transitions = new ArrayDeque<>();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private long rejected;
+    
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+    
+    /**
+     * Runs {@code call} unless the breaker is open, and records its outcome.
+     *
+     * @throws CircuitOpenException without running {@code call} while the breaker is open
+     *                              or another caller is probing
+     */
+    public <T> T execute(SingleFlight.Call<T> call) throws IOException {
+        boolean probe = acquirePermission();
+        try {
+            T result = call.call();
+            onSuccess(probe);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            onFailure(probe, e);
+            throw e;
+        }
+    }
+    
+    /** Whether a call now would be rejected without reaching the source. */
+    public synchronized boolean isRejecting() {
+        return switch (state) {
+            case CLOSED -> false;
+            case OPEN -> remainingOpen().compareTo(Duration.ZERO) > 0;
+            case HALF_OPEN -> probeInFlight;
+        };
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state);
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("rejected", rejected);
+        if (state == State.OPEN) {
+            stats.put("retryInMillis", remainingOpen().toMillis());
+        }
+        stats.put("transitions", new ArrayList<>(transitions));
+        return stats;
+    }
+    
+    private synchronized boolean acquirePermission() throws CircuitOpenException {
+        if (state == State.OPEN) {
+            Duration remaining = remainingOpen();
+            if (remaining.compareTo(Duration.ZERO) > 0) {
+                rejected++;
+                throw new CircuitOpenException(name, remaining);
+            }
+            transitionTo(State.HALF_OPEN, "open for " + openDuration);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                rejected++;
+                throw new CircuitOpenException(name, Duration.ZERO);
+            }
+            probeInFlight = true;
+            return true;
+        }
+        return false;
+    }
+    
+    private synchronized void onSuccess(boolean probe) {
+        consecutiveFailures = 0;
+        if (probe) {
+            probeInFlight = false;
+            transitionTo(State.CLOSED, "probe succeeded");
+        }
+    }
+    
+    private synchronized void onFailure(boolean probe, Throwable failure) {
+        consecutiveFailures++;
+        String reason = (failure instanceof InterruptedIOException ? "timeout: " : "failure: ") + failure.getMessage();
+        if (probe) {
+            probeInFlight = false;
+            open("probe " + reason);
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open(consecutiveFailures + " consecutive failures, last " + reason);
+        }
+    }
+    
+    private void open(String reason) {
+        openedAtNanos = System.nanoTime();
+        transitionTo(State.OPEN, reason);
+    }
+    
+    private Duration remainingOpen() {
+        return openDuration.minusNanos(System.nanoTime() - openedAtNanos);
+    }
+    
+    private void transitionTo(State next, String reason) {
+        if (next == State.OPEN) {
+            logger.warn("Circuit for {} opened for {}: {}", name, openDuration, reason);
+        } else {
+            logger.info("Circuit for {} {}: {}", name, next == State.CLOSED ? "closed" : "half-open", reason);
+        }
+        transitions.addLast(new Transition(state, next, Instant.now(), reason));
+        if (transitions.size() > MAX_TRANSITIONS) {
+            transitions.removeFirst();
+        }
+        state = next;
+    }
+}
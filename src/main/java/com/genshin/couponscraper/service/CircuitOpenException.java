@@ -0,0 +1,23 @@
+package com.genshin.couponscraper.service;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Thrown instead of calling a source whose {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends IOException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final Duration retryAfter;
+    
+    public CircuitOpenException(String source, Duration retryAfter) {
+        super("Circuit for " + source + " is open, retry in " + retryAfter.toSeconds() + "s");
+        this.retryAfter = retryAfter;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,244 @@
+package com.genshin.couponscraper.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Decides whether a token scraped from a page looks like a redeem code.
+ * <p>
+ * Length bounds, allowed character classes, a minimum letter count, blocked words and
+ * blocked prefixes are compiled into a keyword trie when the validator is built, so
+ * {@link #isValid(CharSequence)} checks all of them in a single pass over the token
+ * without allocating. Instances are immutable and thread-safe.
+ */
+public final class CodeValidator {
+    
+    // Trie symbols: 0-9, A-Z, a-z
+    private static final int ALPHABET = 62;
+    private static final int NO_STATE = -1;
+    private static final int ROOT = 0;
+    
+    private final int minLength;
+    private final int maxLength;
+    private final boolean upperCase;
+    private final boolean lowerCase;
+    private final boolean digits;
+    private final int minLetters;
+    private final boolean ignoreCase;
+    private final int[] transitions;
+    private final boolean[] blockedWord;
+    private final boolean[] blockedPrefix;
+    
+    private CodeValidator(Builder builder) {
+        this.minLength = builder.minLength;
+        this.maxLength = builder.maxLength;
+        this.upperCase = builder.upperCase;
+        this.lowerCase = builder.lowerCase;
+        this.digits = builder.digits;
+        this.minLetters = builder.minLetters;
+        this.ignoreCase = builder.ignoreCase;
+        
+        TrieBuilder trie = new TrieBuilder();
+        builder.blockedWords.forEach(word -> trie.add(word, false));
+        builder.blockedPrefixes.forEach(prefix -> trie.add(prefix, true));
+        this.transitions = trie.transitions();
+        this.blockedWord = trie.blockedWord();
+        this.blockedPrefix = trie.blockedPrefix();
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    public boolean isValid(CharSequence code) {
+        if (code == null) {
+            return false;
+        }
+        int length = code.length();
+        if (length < minLength || length > maxLength) {
+            return false;
+        }
+        
+        int letters = 0;
+        int state = ROOT;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (!upperCase) return false;
+                letters++;
+            } else if (c >= 'a' && c <= 'z') {
+                if (!lowerCase) return false;
+                letters++;
+            } else if (c >= '0' && c <= '9') {
+                if (!digits) return false;
+            } else {
+                return false;
+            }
+            
+            if (state != NO_STATE) {
+                state = transitions[state * ALPHABET + symbol(c)];
+                if (state != NO_STATE && blockedPrefix[state]) {
+                    return false;
+                }
+            }
+        }
+        
+        if (state != NO_STATE && blockedWord[state]) {
+            return false;
+        }
+        return letters >= minLetters;
+    }
+    
+    private int symbol(char c) {
+        if (c <= '9') {
+            return c - '0';
+        }
+        if (c <= 'Z') {
+            return 10 + c - 'A';
+        }
+        return ignoreCase ? 10 + c - 'a' : 36 + c - 'a';
+    }
+    
+    private class TrieBuilder {
+        
+        private final List<int[]> nodes = new ArrayList<>();
+        private final List<boolean[]> flags = new ArrayList<>();
+        
+        TrieBuilder() {
+            newNode();
+        }
+        
+        void add(String keyword, boolean prefix) {
+            // A keyword with characters no code may contain could never match; fail the build instead
+            if (keyword.isEmpty() || !keyword.chars().allMatch(c -> Character.isLetterOrDigit(c) && c < 128)) {
+                throw new IllegalArgumentException("Blocked " + (prefix ? "prefix" : "word") + " \"" + keyword
+                        + "\" can never match a code, which only contains the letters A-Z, a-z and digits");
+            }
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                int symbol = symbol(keyword.charAt(i));
+                int next = nodes.get(state)[symbol];
+                if (next == NO_STATE) {
+                    next = newNode();
+                    nodes.get(state)[symbol] = next;
+                }
+                state = next;
+            }
+            flags.get(state)[prefix ? 1 : 0] = true;
+        }
+        
+        int[] transitions() {
+            int[] table = new int[nodes.size() * ALPHABET];
+            for (int i = 0; i < nodes.size(); i++) {
+                System.arraycopy(nodes.get(i), 0, table, i * ALPHABET, ALPHABET);
+            }
+            return table;
+        }
+        
+        boolean[] blockedWord() {
+            boolean[] blocked = new boolean[flags.size()];
+            for (int i = 0; i < blocked.length; i++) {
+                blocked[i] = flags.get(i)[0];
+            }
+            return blocked;
+        }
+        
+        boolean[] blockedPrefix() {
+            boolean[] blocked = new boolean[flags.size()];
+            for (int i = 0; i < blocked.length; i++) {
+                blocked[i] = flags.get(i)[1];
+            }
+            return blocked;
+        }
+        
+        private int newNode() {
+            int[] transitions = new int[ALPHABET];
+            Arrays.fill(transitions, NO_STATE);
+            nodes.add(transitions);
+            flags.add(new boolean[2]);
+            return nodes.size() - 1;
+        }
+    }
+    
+    public static class Builder {
+        
+        private int minLength = 1;
+        private int maxLength = Integer.MAX_VALUE;
+        private boolean upperCase;
+        private boolean lowerCase;
+        private boolean digits;
+        private int minLetters;
+        private boolean ignoreCase;
+        private final List<String> blockedWords = new ArrayList<>();
+        private final List<String> blockedPrefixes = new ArrayList<>();
+        
+        private Builder() {
+        }
+        
+        public Builder minLength(int minLength) {
+            this.minLength = minLength;
+            return this;
+        }
+        
+        public Builder length(int minLength, int maxLength) {
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            return this;
+        }
+        
+        /** Allows {@code A-Z}. Codes may only contain the character classes allowed here. */
+        public Builder upperCaseLetters() {
+            this.upperCase = true;
+            return this;
+        }
+        
+        /** Allows {@code a-z}. */
+        public Builder lowerCaseLetters() {
+            this.lowerCase = true;
+            return this;
+        }
+        
+        /** Allows {@code 0-9}. */
+        public Builder digits() {
+            this.digits = true;
+            return this;
+        }
+        
+        public Builder minLetters(int minLetters) {
+            this.minLetters = minLetters;
+            return this;
+        }
+        
+        /**
+         * Rejects codes equal to one of {@code words}, e.g. table headers or button labels.
+         * {@link #build()} fails for a word that is not made of ASCII letters and digits,
+         * as no code could ever equal it.
+         */
+        public Builder blockWords(Collection<String> words) {
+            blockedWords.addAll(words);
+            return this;
+        }
+        
+        public Builder blockWords(String... words) {
+            return blockWords(Arrays.asList(words));
+        }
+        
+        /** Rejects codes starting with one of {@code prefixes}; these are checked like blocked words. */
+        public Builder blockPrefixes(String... prefixes) {
+            blockedPrefixes.addAll(Arrays.asList(prefixes));
+            return this;
+        }
+        
+        /** Matches blocked words and prefixes regardless of letter case. */
+        public Builder ignoreCase() {
+            this.ignoreCase = true;
+            return this;
+        }
+        
+        public CodeValidator build() {
+            return new CodeValidator(this);
+        }
+    }
+}
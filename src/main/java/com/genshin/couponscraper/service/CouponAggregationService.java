@@ -0,0 +1,76 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.AggregateCouponResponse;
+import com.genshin.couponscraper.model.AggregateCouponResponse.SourceStatus;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.Game;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fans out to every game's cache concurrently and collects whatever arrives within the
+ * configured budget. All sources share one deadline, so the total wait is bounded by
+ * the slowest source or the budget, whichever is shorter. A source still loading at the
+ * deadline is cancelled, so a hung upstream does not keep holding fan-out threads.
+ */
+@Service
+public class CouponAggregationService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CouponAggregationService.class);
+    
+    private final CouponCacheService couponCacheService;
+    private final ExecutorService fanOutExecutor;
+    private final long budgetMillis;
+    
+    public CouponAggregationService(CouponCacheService couponCacheService,
+                                    @Qualifier("fanOutExecutor") ExecutorService fanOutExecutor,
+                                    CouponScraperProperties properties) {
+        this.couponCacheService = couponCacheService;
+        this.fanOutExecutor = fanOutExecutor;
+        this.budgetMillis = properties.getAggregate().getTimeout().toMillis();
+    }
+    
+    public AggregateCouponResponse getAllCoupons() {
+        Map<Game, Future<List<CouponResponse>>> pending = new EnumMap<>(Game.class);
+        for (Game game : Game.values()) {
+            pending.put(game, fanOutExecutor.submit(() -> couponCacheService.getCoupons(game)));
+        }
+        
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        AggregateCouponResponse response = new AggregateCouponResponse();
+        
+        for (Map.Entry<Game, Future<List<CouponResponse>>> entry : pending.entrySet()) {
+            Game game = entry.getKey();
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                response.addCoupons(game, entry.getValue().get(remaining, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                logger.warn("{} coupons not ready within {} ms", game.getDisplayName(), budgetMillis);
+                response.addFailure(game, SourceStatus.timeout(budgetMillis));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                logger.warn("Failed to load {} coupons: {}", game.getDisplayName(), cause.getMessage());
+                response.addFailure(game, SourceStatus.error(cause.getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                entry.getValue().cancel(true);
+                response.addFailure(game, SourceStatus.error("Interrupted"));
+            }
+        }
+        
+        return response;
+    }
+}
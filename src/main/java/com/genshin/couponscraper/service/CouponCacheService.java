@@ -0,0 +1,185 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.store.SnapshotStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Per-game cache in front of the scraper services.
+ * <p>
+ * A request for a game without a snapshot scrapes synchronously, joining the scrape
+ * already in flight if there is one (such as the startup refresh of
+ * {@link CouponRefreshScheduler}). After that the latest snapshot
+ * is always served from memory; once it is older than the configured TTL a single
+ * background refresh is started and the stale snapshot keeps being served until the
+ * refresh completes (stale-while-revalidate). A failed refresh keeps the old snapshot.
+ * <p>
+ * Failed scrapes are retried under the shared {@link RetryPolicy}, and every source sits
+ * behind its own {@link CircuitBreaker}, which counts a scrape as failed once its
+ * retries are exhausted. While a source's circuit is open its last snapshot is served
+ * without starting refreshes, and a game that has no snapshot yet fails fast instead
+ * of waiting out the source's timeouts.
+ * <p>
+ * Snapshots kept by the {@link SnapshotStore} are loaded when the service is created,
+ * so a restart serves the previous run's coupons (refreshed in the background once
+ * older than the TTL) instead of scraping on the first request. Every successful
+ * scrape is published as a {@link SnapshotUpdatedEvent}.
+ */
+@Service
+public class CouponCacheService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CouponCacheService.class);
+    
+    private final Map<Game, CouponSource> sources = new EnumMap<>(Game.class);
+    private final Map<Game, CircuitBreaker> breakers = new EnumMap<>(Game.class);
+    private final Map<Game, CouponSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Set<Game> refreshing = ConcurrentHashMap.newKeySet();
+    private final SingleFlight<Game, CouponSnapshot> inFlightScrapes = new SingleFlight<>();
+    private final CouponResponseEncoder couponResponseEncoder;
+    private final RetryExecutor retryExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService scrapeExecutor;
+    private final Duration ttl;
+    
+    public CouponCacheService(GenshinImpactScraperService genshinImpactScraperService,
+                              HonkaiStarRailScraperService honkaiStarRailScraperService,
+                              BloxFruitsScraperService bloxFruitsScraperService,
+                              PlayTogetherScraperService playTogetherScraperService,
+                              FCMobileScraperService fcMobileScraperService,
+                              CouponResponseEncoder couponResponseEncoder,
+                              RetryExecutor retryExecutor,
+                              SnapshotStore snapshotStore,
+                              ApplicationEventPublisher eventPublisher,
+                              @Qualifier("scrapeExecutor") ExecutorService scrapeExecutor,
+                              CouponScraperProperties properties) {
+        sources.put(Game.GENSHIN, genshinImpactScraperService::fetchActiveCoupons);
+        sources.put(Game.HONKAI_STAR_RAIL, honkaiStarRailScraperService::fetchActiveCoupons);
+        sources.put(Game.BLOX_FRUITS, bloxFruitsScraperService::scrapeActiveCoupons);
+        sources.put(Game.PLAY_TOGETHER, playTogetherScraperService::fetchActiveCoupons);
+        sources.put(Game.FC_MOBILE, fcMobileScraperService::fetchActiveCoupons);
+        this.couponResponseEncoder = couponResponseEncoder;
+        this.retryExecutor = retryExecutor;
+        this.eventPublisher = eventPublisher;
+        this.scrapeExecutor = scrapeExecutor;
+        this.ttl = properties.getCache().getTtl();
+        
+        CouponScraperProperties.Breaker breaker = properties.getBreaker();
+        for (Game game : Game.values()) {
+            breakers.put(game, new CircuitBreaker(game.getDisplayName(),
+                    breaker.getFailureThreshold(), breaker.getOpenDuration()));
+        }
+        
+        snapshotStore.loadAll().forEach((game, snapshot) -> {
+            couponResponseEncoder.encode(snapshot);
+            snapshots.put(game, snapshot);
+            logger.info("Restored {} {} coupons scraped {} ago", snapshot.getCoupons().size(),
+                    game.getDisplayName(), snapshot.age());
+        });
+    }
+    
+    public List<CouponResponse> getCoupons(Game game) throws IOException {
+        return getSnapshot(game).getCoupons();
+    }
+    
+    public CouponSnapshot getSnapshot(Game game) throws IOException {
+        CouponSnapshot snapshot = snapshots.get(game);
+        if (snapshot == null) {
+            logger.info("No cached {} coupons yet, scraping synchronously", game.getDisplayName());
+            return refresh(game);
+        }
+        
+        if (snapshot.isOlderThan(ttl) && !breakers.get(game).isRejecting()) {
+            refreshInBackground(game);
+        }
+        return snapshot;
+    }
+    
+    public Optional<CouponSnapshot> peekSnapshot(Game game) {
+        return Optional.ofNullable(snapshots.get(game));
+    }
+    
+    /**
+     * Scrapes the game now and replaces its snapshot. Exceptions leave the previous
+     * snapshot in place. Concurrent callers for the same game share a single scrape.
+     *
+     * @throws CircuitOpenException without scraping while the game's circuit is open
+     */
+    public CouponSnapshot refresh(Game game) throws IOException {
+        return inFlightScrapes.execute(game, () -> scrape(game));
+    }
+    
+    /**
+     * Upstream scrapes started versus callers that joined one already in flight, per game.
+     */
+    public Map<String, Map<String, Long>> getCoalescingStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        for (Game game : Game.values()) {
+            stats.put(game.getSlug(), inFlightScrapes.stats(game));
+        }
+        return stats;
+    }
+    
+    /**
+     * Circuit state, failure count and recent state transitions, per game.
+     */
+    public Map<String, Map<String, Object>> getBreakerStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (Game game : Game.values()) {
+            stats.put(game.getSlug(), breakers.get(game).getStats());
+        }
+        return stats;
+    }
+    
+    private CouponSnapshot scrape(Game game) throws IOException {
+        CouponSource source = sources.get(game);
+        List<CouponResponse> coupons = breakers.get(game).execute(() -> retryExecutor.execute(game.getSlug(), source::fetch));
+        CouponSnapshot snapshot = new CouponSnapshot(game, coupons, Instant.now());
+        couponResponseEncoder.encode(snapshot);
+        CouponSnapshot previous = snapshots.put(game, snapshot);
+        logger.info("Cached {} {} coupons", coupons.size(), game.getDisplayName());
+        eventPublisher.publishEvent(new SnapshotUpdatedEvent(previous, snapshot));
+        return snapshot;
+    }
+    
+    private void refreshInBackground(Game game) {
+        if (!refreshing.add(game)) {
+            return;
+        }
+        
+        try {
+            scrapeExecutor.execute(() -> {
+                try {
+                    refresh(game);
+                } catch (Exception e) {
+                    logger.warn("Background refresh of {} coupons failed, keeping stale snapshot: {}",
+                            game.getDisplayName(), e.getMessage());
+                } finally {
+                    refreshing.remove(game);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(game);
+            logger.warn("Could not schedule refresh of {} coupons: {}", game.getDisplayName(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.genshin.couponscraper.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponChangeEvent;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes the codes each refresh added or removed to {@code /craw/stream} subscribers
+ * as server-sent events.
+ * <p>
+ * A subscriber is an {@link SseEmitter} parked in the set of its game, or of all games,
+ * and holds no thread while idle. Every change is serialized once into an event frame
+ * that is written as-is to each matching subscriber. The last
+ * {@code coupon.stream.buffer-size} frames stay in a ring buffer indexed by event id, so
+ * a client reconnecting with {@code Last-Event-ID} is sent what it missed; one that has
+ * fallen further behind, or whose id is from before a restart, gets a {@code reset}
+ * event telling it to fetch the coupon endpoints again. Ids start at the startup time in
+ * milliseconds, so they keep increasing across restarts.
+ * <p>
+ * Publishing, replays and heartbeats all run on the single {@code streamExecutor}
+ * thread, which alone touches the ring buffer. It never writes to a client: frames go
+ * into a bounded queue per subscriber, drained by one task at a time on the
+ * {@code streamDeliveryExecutor}, so a client that stops reading only holds up its own
+ * delivery. A subscriber whose queue fills up, or whose write has been stuck for longer
+ * than {@code coupon.stream.send-timeout}, is evicted.
+ */
+@Component
+public class CouponChangeFeed {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CouponChangeFeed.class);
+    
+    private static final String CHANGE_EVENT = "change";
+    private static final String RESET_EVENT = "reset";
+    private static final Set<DataWithMediaType> SUBSCRIBED = SseEmitter.event().comment("subscribed").build();
+    private static final Set<DataWithMediaType> HEARTBEAT = SseEmitter.event().comment("heartbeat").build();
+    
+    private final ObjectWriter writer;
+    private final ScheduledExecutorService streamExecutor;
+    private final ExecutorService deliveryExecutor;
+    private final long timeoutMillis;
+    private final int maxSubscribers;
+    private final int queueCapacity;
+    private final long sendTimeoutNanos;
+    
+    private final Set<Subscriber> allGames = ConcurrentHashMap.newKeySet();
+    private final Map<Game, Set<Subscriber>> byGame = new EnumMap<>(Game.class);
+    // Open subscriptions, counted from when subscribe reserves their slot
+    private final AtomicInteger subscribers = new AtomicInteger();
+    
+    // Only touched on the stream executor
+    private final Change[] buffer;
+    private long nextId = System.currentTimeMillis();
+    private int buffered;
+    
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    
+    public CouponChangeFeed(ObjectMapper objectMapper,
+                            @Qualifier("streamExecutor") ScheduledExecutorService streamExecutor,
+                            @Qualifier("streamDeliveryExecutor") ExecutorService deliveryExecutor,
+                            CouponScraperProperties properties) {
+        // An event's data has to fit on one line
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.streamExecutor = streamExecutor;
+        this.deliveryExecutor = deliveryExecutor;
+        CouponScraperProperties.Stream settings = properties.getStream();
+        this.timeoutMillis = settings.getTimeout().toMillis();
+        this.maxSubscribers = settings.getMaxSubscribers();
+        // Room for the subscribed comment and at least one event
+        this.queueCapacity = Math.max(2, settings.getSubscriberQueue());
+        this.sendTimeoutNanos = settings.getSendTimeout().toNanos();
+        this.buffer = new Change[Math.max(1, settings.getBufferSize())];
+        for (Game game : Game.values()) {
+            byGame.put(game, ConcurrentHashMap.newKeySet());
+        }
+        
+        long heartbeatMillis = settings.getHeartbeat().toMillis();
+        streamExecutor.scheduleWithFixedDelay(this::sendHeartbeat, heartbeatMillis, heartbeatMillis,
+                TimeUnit.MILLISECONDS);
+    }
+    
+    private record Change(long id, Game game, Set<DataWithMediaType> frame) {
+    }
+    
+    /**
+     * An emitter, the group it is registered in and the frames not yet written to it,
+     * holding one subscriber slot until closed.
+     */
+    private final class Subscriber {
+        
+        final SseEmitter emitter;
+        final Set<Subscriber> group;
+        private final BlockingQueue<Set<DataWithMediaType>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean open = new AtomicBoolean(true);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // When the write in progress started, 0 while none is
+        private volatile long sendStartedNanos;
+        
+        Subscriber(SseEmitter emitter, Set<Subscriber> group) {
+            this.emitter = emitter;
+            this.group = group;
+        }
+        
+        boolean isOpen() {
+            return open.get();
+        }
+        
+        boolean isIdle() {
+            return queue.isEmpty() && sendStartedNanos == 0;
+        }
+        
+        boolean isStalled(long now) {
+            long started = sendStartedNanos;
+            return started != 0 && now - started > sendTimeoutNanos;
+        }
+        
+        /** Leaves the group and frees the slot; only the first call frees it. */
+        boolean close() {
+            group.remove(this);
+            if (open.compareAndSet(true, false)) {
+                subscribers.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+        
+        /** Queues {@code frame} for delivery, evicting the subscriber if its queue is full. */
+        void enqueue(Set<DataWithMediaType> frame) {
+            if (!isOpen()) {
+                return;
+            }
+            if (!queue.offer(frame)) {
+                evict("its " + queueCapacity + " queued events were not read");
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    deliveryExecutor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                    close();
+                }
+            }
+        }
+        
+        /** Disconnects a subscriber that is not keeping up. */
+        void evict(String reason) {
+            if (!close()) {
+                return;
+            }
+            queue.clear();
+            evicted.incrementAndGet();
+            logger.info("Evicted a change stream subscriber: {}", reason);
+            try {
+                // Not here: complete() waits for a write that may be stuck
+                deliveryExecutor.execute(emitter::complete);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the container ends the request
+            }
+        }
+        
+        private void drain() {
+            do {
+                Set<DataWithMediaType> frame;
+                while (isOpen() && (frame = queue.poll()) != null) {
+                    sendStartedNanos = System.nanoTime();
+                    try {
+                        emitter.send(frame);
+                    } catch (IOException | IllegalStateException e) {
+                        dropped.incrementAndGet();
+                        close();
+                    } finally {
+                        sendStartedNanos = 0;
+                    }
+                }
+                draining.set(false);
+                // A frame queued after the last poll but before draining was cleared is picked up here
+            } while (isOpen() && !queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+    }
+    
+    /**
+     * Opens a subscription to the changes of {@code game}, or of every game when it is
+     * {@code null}, first replaying the changes after {@code lastEventId} if given.
+     * Empty when {@code coupon.stream.max-subscribers} subscriptions are already open.
+     */
+    public Optional<SseEmitter> subscribe(Game game, String lastEventId) {
+        // Reserve the slot here, not on registration, so a burst of connects cannot all pass
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            rejected.incrementAndGet();
+            return Optional.empty();
+        }
+        
+        SseEmitter emitter = newEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, game != null ? byGame.get(game) : allGames);
+        emitter.onTimeout(emitter::complete);
+        emitter.onCompletion(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        
+        try {
+            streamExecutor.execute(() -> {
+                subscriber.enqueue(SUBSCRIBED);
+                if (lastEventId != null) {
+                    replay(game, lastEventId).forEach(subscriber::enqueue);
+                }
+                subscriber.group.add(subscriber);
+                if (!subscriber.isOpen()) {
+                    // Closed while registering
+                    subscriber.group.remove(subscriber);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            subscriber.close();
+            throw e;
+        }
+        return Optional.of(emitter);
+    }
+    
+    @EventListener
+    public void onSnapshotUpdated(SnapshotUpdatedEvent event) {
+        // The first snapshot of a game is where the feed starts, not a change
+        if (event.previous() == null || !event.isChanged()) {
+            return;
+        }
+        
+        Set<String> before = codes(event.previous());
+        Set<String> after = codes(event.snapshot());
+        List<String> added = new ArrayList<>(after);
+        added.removeAll(before);
+        List<String> removed = new ArrayList<>(before);
+        removed.removeAll(after);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        
+        String data;
+        try {
+            data = writer.writeValueAsString(new CouponChangeEvent(event.game(), added, removed,
+                    event.snapshot().getFetchedAt()));
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not serialize {} change event: {}", event.game().getDisplayName(), e.getMessage());
+            return;
+        }
+        logger.info("{} codes changed: {} added, {} removed", event.game().getDisplayName(), added.size(), removed.size());
+        streamExecutor.execute(() -> publish(event.game(), data));
+    }
+    
+    private void publish(Game game, String data) {
+        long id = nextId++;
+        Set<DataWithMediaType> frame = SseEmitter.event()
+                .id(Long.toString(id))
+                .name(CHANGE_EVENT)
+                .data(data, MediaType.APPLICATION_JSON)
+                .build();
+        buffer[slot(id)] = new Change(id, game, frame);
+        buffered = Math.min(buffered + 1, buffer.length);
+        published.incrementAndGet();
+        
+        broadcast(byGame.get(game), frame);
+        broadcast(allGames, frame);
+    }
+    
+    /**
+     * The frames after {@code lastEventId}, or a reset when they are no longer buffered
+     * or would not fit in a subscriber's queue.
+     */
+    private List<Set<DataWithMediaType>> replay(Game game, String lastEventId) {
+        long lastId;
+        try {
+            lastId = Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            lastId = Long.MIN_VALUE;
+        }
+        
+        long oldestId = nextId - buffered;
+        if (lastId >= oldestId - 1 && lastId < nextId) {
+            List<Set<DataWithMediaType>> missed = new ArrayList<>();
+            for (long id = lastId + 1; id < nextId; id++) {
+                Change change = buffer[slot(id)];
+                if (game == null || change.game() == game) {
+                    missed.add(change.frame());
+                }
+            }
+            // One slot is taken by the subscribed comment
+            if (missed.size() < queueCapacity) {
+                resumed.incrementAndGet();
+                return missed;
+            }
+        }
+        
+        resets.incrementAndGet();
+        return List.of(SseEmitter.event()
+                .id(Long.toString(nextId - 1))
+                .name(RESET_EVENT)
+                .data("{\"message\":\"Missed changes are no longer available, fetch the coupons again\"}",
+                        MediaType.APPLICATION_JSON)
+                .build());
+    }
+    
+    private void sendHeartbeat() {
+        long now = System.nanoTime();
+        List<Set<Subscriber>> groups = new ArrayList<>(byGame.values());
+        groups.add(allGames);
+        for (Set<Subscriber> group : groups) {
+            for (Subscriber subscriber : group) {
+                if (subscriber.isStalled(now)) {
+                    subscriber.evict("a write was stuck for over "
+                            + TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos) + " ms");
+                } else if (subscriber.isIdle()) {
+                    // Keeps an idle connection open and finds out whether it was closed
+                    subscriber.enqueue(HEARTBEAT);
+                }
+            }
+        }
+    }
+    
+    private void broadcast(Set<Subscriber> group, Set<DataWithMediaType> frame) {
+        for (Subscriber subscriber : group) {
+            subscriber.enqueue(frame);
+        }
+    }
+    
+    /** The emitter of a new subscription; tests substitute clients that do not read. */
+    SseEmitter newEmitter(long timeoutMillis) {
+        return new SseEmitter(timeoutMillis);
+    }
+    
+    private int slot(long id) {
+        return (int) Math.floorMod(id, (long) buffer.length);
+    }
+    
+    private static Set<String> codes(CouponSnapshot snapshot) {
+        Set<String> codes = new LinkedHashSet<>();
+        for (CouponResponse coupon : snapshot.getCoupons()) {
+            if (coupon.getCode() != null) {
+                codes.add(coupon.getCode());
+            }
+        }
+        return codes;
+    }
+    
+    /** Lets open subscriptions end cleanly instead of being cut off at shutdown. */
+    @PreDestroy
+    public void close() {
+        byGame.values().forEach(group -> group.forEach(subscriber -> subscriber.emitter.complete()));
+        allGames.forEach(subscriber -> subscriber.emitter.complete());
+    }
+    
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("subscribers", (long) subscribers.get());
+        stats.put("published", published.get());
+        stats.put("resumed", resumed.get());
+        stats.put("resets", resets.get());
+        stats.put("rejected", rejected.get());
+        stats.put("dropped", dropped.get());
+        stats.put("evicted", evicted.get());
+        return stats;
+    }
+}
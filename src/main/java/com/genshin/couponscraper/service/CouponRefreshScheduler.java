@@ -0,0 +1,100 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.Game;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes every game's snapshot in the background so requests are served from memory.
+ * Each game runs on its own interval; every run is offset by a random jitter so the
+ * upstream sites are not all hit in the same second.
+ * <p>
+ * The scheduler only times the runs: each refresh is handed to the {@code scrapeExecutor}
+ * and the game's next run is scheduled once it has finished. Games without a restored
+ * snapshot are refreshed right at startup, so the first request finds a snapshot or
+ * joins the scrape already in flight instead of starting one of its own.
+ */
+@Service
+public class CouponRefreshScheduler {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CouponRefreshScheduler.class);
+    
+    private final CouponCacheService couponCacheService;
+    private final CouponScraperProperties.Refresh settings;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService scrapeExecutor;
+    
+    public CouponRefreshScheduler(CouponCacheService couponCacheService,
+                                  @Qualifier("refreshScheduler") ScheduledExecutorService scheduler,
+                                  @Qualifier("scrapeExecutor") ExecutorService scrapeExecutor,
+                                  CouponScraperProperties properties) {
+        this.couponCacheService = couponCacheService;
+        this.scheduler = scheduler;
+        this.scrapeExecutor = scrapeExecutor;
+        this.settings = properties.getRefresh();
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!settings.isEnabled()) {
+            logger.info("Scheduled coupon refresh is disabled");
+            return;
+        }
+        
+        for (Game game : Game.values()) {
+            Duration firstRun = couponCacheService.peekSnapshot(game).isPresent() ? jitter() : Duration.ZERO;
+            logger.info("Scheduling {} refresh every {} (first run in {})",
+                    game.getDisplayName(), settings.intervalFor(game), firstRun);
+            schedule(game, firstRun);
+        }
+    }
+    
+    private void schedule(Game game, Duration delay) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        scheduler.schedule(() -> dispatch(game), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    private void dispatch(Game game) {
+        try {
+            scrapeExecutor.execute(() -> run(game));
+        } catch (RejectedExecutionException e) {
+            // Shutting down, or the pool refused the task; try again next interval
+            schedule(game, nextRun(game));
+        }
+    }
+    
+    private void run(Game game) {
+        try {
+            couponCacheService.refresh(game);
+        } catch (CircuitOpenException e) {
+            logger.debug("Skipped scheduled refresh of {} coupons: {}", game.getDisplayName(), e.getMessage());
+        } catch (Exception e) {
+            logger.warn("Scheduled refresh of {} coupons failed: {}", game.getDisplayName(), e.getMessage());
+        } finally {
+            schedule(game, nextRun(game));
+        }
+    }
+    
+    private Duration nextRun(Game game) {
+        return settings.intervalFor(game).plus(jitter());
+    }
+    
+    private Duration jitter() {
+        long maxMillis = settings.getJitter().toMillis();
+        return maxMillis <= 0 ? Duration.ZERO : Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxMillis + 1));
+    }
+}
@@ -0,0 +1,51 @@
+package com.genshin.couponscraper.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.EncodedCoupons;
+import com.genshin.couponscraper.model.Game;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes and compresses each game's coupons once per content change, so requests
+ * write ready-made bytes instead of running Jackson and a compressor every time.
+ * Uses the application's ObjectMapper, so the output matches what Spring MVC would
+ * have written (including indentation and null handling).
+ */
+@Component
+public class CouponResponseEncoder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CouponResponseEncoder.class);
+    
+    private final ObjectMapper objectMapper;
+    private final Map<Game, EncodedCoupons> encoded = new ConcurrentHashMap<>();
+    
+    public CouponResponseEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+    
+    public EncodedCoupons encode(CouponSnapshot snapshot) {
+        EncodedCoupons current = encoded.get(snapshot.getGame());
+        if (current != null && current.getETag().equals(snapshot.getETag())) {
+            return current;
+        }
+        
+        try {
+            EncodedCoupons fresh = EncodedCoupons.of(snapshot.getETag(),
+                    objectMapper.writeValueAsBytes(snapshot.getCoupons()));
+            encoded.put(snapshot.getGame(), fresh);
+            logger.debug("Encoded {} coupons: {} bytes", snapshot.getGame().getDisplayName(),
+                    fresh.getIdentity().size());
+            return fresh;
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.model.CouponResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A scrape of one game's coupon page. Unlike the public service methods used by
+ * the controller, implementations report upstream failures by throwing, so callers
+ * can tell "no codes" apart from "could not fetch".
+ */
+@FunctionalInterface
+public interface CouponSource {
+    
+    List<CouponResponse> fetch() throws IOException;
+}
@@ -0,0 +1,536 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.model.CouponResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Extracts FC Mobile codes from the text of the codes page.
+ * <p>
+ * One forward scan records where the markers are: {@code reward:} labels, dates
+ * ({@code 15th October}) and dates followed by a code and its {@code COPY} button.
+ * The three extraction strategies are then resolved from those positions instead of
+ * running their own regular expressions over the whole text:
+ * <ol>
+ *     <li>dated codes followed by {@code COPY}, optionally preceded by a reward</li>
+ *     <li>codes in date-delimited sections that do not mention {@code expired}</li>
+ *     <li>the first code within 100 characters after a {@code reward: ... date} block</li>
+ * </ol>
+ * The result is the same candidate list, in the same order, as the regular expressions
+ * {@code (?i)(?:reward:\s*([^\n]*?)\s*)?(\d{1,2}(?:st|nd|rd|th)?\s+\w+)\s+([A-Z0-9]{6,20})\s+COPY},
+ * a split on {@code (?i)(?=\d{1,2}(?:st|nd|rd|th)?\s+\w+)} and
+ * {@code (?i)reward:\s*([^\n]*?)\s*(\d{1,2}(?:st|nd|rd|th)?\s+\w+)} produced.
+ */
+final class FCMobileCodeScanner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(FCMobileCodeScanner.class);
+    
+    private static final String REWARD_MARKER = "reward:";
+    private static final int MIN_CODE_LENGTH = 6;
+    private static final int MAX_CODE_LENGTH = 20;
+    private static final int REWARD_LOOKAHEAD = 100;
+    
+    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{1,2})(?:st|nd|rd|th)?\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    private final CharSequence text;
+    private final int length;
+    private final Predicate<String> validCode;
+    
+    // Marker positions, in text order
+    private int[] rewardMarkers;
+    private int[] dates;
+    private int[] copyDates;
+    private int[] newlines;
+    
+    private FCMobileCodeScanner(CharSequence text, Predicate<String> validCode) {
+        this.text = text;
+        this.length = text.length();
+        this.validCode = validCode;
+    }
+    
+    /**
+     * Returns the active codes found in {@code text}, one per code, in the order they were
+     * first found: strategy by strategy and in text order within each. A code found twice
+     * by the COPY strategy keeps its first position and the details of its last match;
+     * the other strategies only add codes that were not found yet.
+     * <p>
+     * Takes any {@link CharSequence} so tests can count the characters the scan reads.
+     */
+    static List<CouponResponse> scan(CharSequence text, Predicate<String> validCode) {
+        FCMobileCodeScanner scanner = new FCMobileCodeScanner(text, validCode);
+        scanner.collectMarkers();
+        
+        // Keyed by code: the ordered result doubles as the set of codes already found
+        Map<String, CouponResponse> activeCodes = new LinkedHashMap<>();
+        scanner.copyButtonCodes(activeCodes);
+        scanner.sectionCodes(activeCodes);
+        scanner.rewardBlockCodes(activeCodes);
+        return new ArrayList<>(activeCodes.values());
+    }
+    
+    private void collectMarkers() {
+        IntStream.Builder rewardMarkers = IntStream.builder();
+        IntStream.Builder dates = IntStream.builder();
+        IntStream.Builder copyDates = IntStream.builder();
+        IntStream.Builder newlines = IntStream.builder();
+        
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (isDigit(c)) {
+                int month = monthStart(i);
+                if (month >= 0 && isWordAt(month)) {
+                    dates.add(i);
+                    if (copyMatchAt(i) != null) {
+                        copyDates.add(i);
+                    }
+                }
+            } else if ((c == 'r' || c == 'R') && matchesIgnoreCase(i, REWARD_MARKER)) {
+                rewardMarkers.add(i);
+            } else if (c == '\n') {
+                newlines.add(i);
+            }
+        }
+        
+        this.rewardMarkers = rewardMarkers.build().toArray();
+        this.dates = dates.build().toArray();
+        this.copyDates = copyDates.build().toArray();
+        this.newlines = newlines.build().toArray();
+    }
+    
+    // Strategy 1: dated codes followed by a COPY button, optionally preceded by "reward: ..."
+    private void copyButtonCodes(Map<String, CouponResponse> activeCodes) {
+        int position = 0;
+        int nextMarker = 0;
+        int nextDate = 0;
+        
+        while (true) {
+            while (nextDate < copyDates.length && copyDates[nextDate] < position) {
+                nextDate++;
+            }
+            while (nextMarker < rewardMarkers.length && rewardMarkers[nextMarker] < position) {
+                nextMarker++;
+            }
+            int firstDate = nextDate < copyDates.length ? copyDates[nextDate] : length;
+            
+            // A reward label wins if it starts before the next dated code and reaches one
+            String reward = null;
+            int date = -1;
+            for (int m = nextMarker; m < rewardMarkers.length && rewardMarkers[m] < firstDate; m++) {
+                int rewardStart = skipWhitespace(rewardMarkers[m] + REWARD_MARKER.length());
+                int candidate = firstAtOrAfter(copyDates, rewardStart);
+                if (candidate < 0) {
+                    break;
+                }
+                int rewardEnd = whitespaceRunStart(candidate, rewardStart);
+                if (!hasNewline(rewardStart, rewardEnd)) {
+                    reward = slice(rewardStart, rewardEnd);
+                    date = candidate;
+                    break;
+                }
+            }
+            if (date < 0) {
+                if (firstDate == length) {
+                    return;
+                }
+                date = firstDate;
+            }
+            
+            CopyMatch match = copyMatchAt(date);
+            String code = slice(match.codeStart(), match.codeEnd());
+            String dateText = slice(date, match.dateEnd());
+            position = match.end();
+            
+            if (validCode.test(code)) {
+                String cleanReward = (reward != null && !reward.trim().isEmpty()) ?
+                    reward.trim() : "Unknown reward";
+                
+                activeCodes.put(code, new CouponResponse(code, cleanReward, dateText, "Active", "Global"));
+                logger.debug("Found active code with COPY: {} | Reward: {} | Date: {}",
+                    code, cleanReward, dateText);
+            }
+        }
+    }
+    
+    // Strategy 2: codes in sections starting at each date, skipping sections that mention "expired"
+    private void sectionCodes(Map<String, CouponResponse> activeCodes) {
+        int sectionStart = 0;
+        for (int i = 0; i <= dates.length; i++) {
+            int sectionEnd = i < dates.length ? dates[i] : length;
+            if (sectionEnd == 0) {
+                continue;
+            }
+            codesInSection(sectionStart, sectionEnd, activeCodes);
+            sectionStart = sectionEnd;
+        }
+    }
+    
+    private void codesInSection(int start, int end, Map<String, CouponResponse> activeCodes) {
+        if (isTrimmedEmpty(start, end) || containsIgnoreCase(start, end, "expired")) {
+            return;
+        }
+        
+        String section = null;
+        int i = start;
+        while (i < end) {
+            if (!isWord(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int wordEnd = wordRunEnd(i, end);
+            int codeEnd = codeRunEnd(i, end);
+            int codeStart = i;
+            i = wordEnd;
+            if (codeEnd < 0) continue;
+            String code = slice(codeStart, codeEnd);
+            
+            if (!validCode.test(code)) continue;
+            
+            // Check if already found
+            if (activeCodes.containsKey(code)) continue;
+            
+            if (section == null) {
+                section = slice(start, end);
+            }
+            String reward = extractRewardFromSection(section, code);
+            String date = extractDateFromSection(section);
+            
+            activeCodes.put(code, new CouponResponse(code, reward, date, "Active", "Global"));
+            logger.debug("Found active code in section: {} | Reward: {} | Date: {}",
+                code, reward, date);
+        }
+    }
+    
+    // Strategy 3: the first code shortly after a "reward: ... date" block
+    private void rewardBlockCodes(Map<String, CouponResponse> activeCodes) {
+        int position = 0;
+        for (int marker : rewardMarkers) {
+            if (marker < position) {
+                continue;
+            }
+            int rewardStart = skipWhitespace(marker + REWARD_MARKER.length());
+            int date = firstAtOrAfter(dates, rewardStart);
+            if (date < 0) {
+                return;
+            }
+            int rewardEnd = whitespaceRunStart(date, rewardStart);
+            if (hasNewline(rewardStart, rewardEnd)) {
+                continue;
+            }
+            
+            int blockEnd = wordRunEnd(monthStart(date), length);
+            String reward = slice(rewardStart, rewardEnd).trim();
+            String dateText = slice(date, blockEnd);
+            position = blockEnd;
+            
+            // Skip if this block contains "Expired"
+            int lookaheadEnd = Math.min(blockEnd + REWARD_LOOKAHEAD, length);
+            if (containsIgnoreCase(blockEnd, lookaheadEnd, "expired")) {
+                continue;
+            }
+            
+            int codeStart = firstCodeRun(blockEnd, lookaheadEnd);
+            if (codeStart < 0) {
+                continue;
+            }
+            String code = slice(codeStart, codeRunEnd(codeStart, lookaheadEnd));
+            
+            if (validCode.test(code)) {
+                // Check if already found
+                if (!activeCodes.containsKey(code)) {
+                    activeCodes.put(code, new CouponResponse(code, reward, dateText, "Active", "Global"));
+                    logger.debug("Found code after reward block: {} | Reward: {} | Date: {}",
+                        code, reward, dateText);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Start of the month word of a date at {@code i} ({@code 15th October}, {@code 3 May}):
+     * one or two digits, an optional ordinal suffix and whitespace. Returns -1 if there is
+     * no date at {@code i}.
+     */
+    private int monthStart(int i) {
+        int suffix = i + 1 < length && isDigit(text.charAt(i + 1)) ? i + 2 : i + 1;
+        int whitespace;
+        if (isOrdinalSuffix(suffix) && isWhitespaceAt(suffix + 2)) {
+            whitespace = suffix + 2;
+        } else if (isWhitespaceAt(suffix)) {
+            whitespace = suffix;
+        } else {
+            return -1;
+        }
+        return skipWhitespace(whitespace);
+    }
+    
+    /** Date, code and COPY button starting at {@code date}, or null if there is none. */
+    private CopyMatch copyMatchAt(int date) {
+        int month = monthStart(date);
+        if (month < 0 || !isWordAt(month)) {
+            return null;
+        }
+        int dateEnd = wordRunEnd(month, length);
+        if (!isWhitespaceAt(dateEnd)) {
+            return null;
+        }
+        int codeStart = skipWhitespace(dateEnd);
+        int codeEnd = codeStart;
+        while (codeEnd < length && isAsciiAlphanumeric(text.charAt(codeEnd))) {
+            codeEnd++;
+        }
+        int codeLength = codeEnd - codeStart;
+        if (codeLength < MIN_CODE_LENGTH || codeLength > MAX_CODE_LENGTH || !isWhitespaceAt(codeEnd)) {
+            return null;
+        }
+        int copy = skipWhitespace(codeEnd);
+        if (!matchesIgnoreCase(copy, "copy")) {
+            return null;
+        }
+        return new CopyMatch(dateEnd, codeStart, codeEnd, copy + 4);
+    }
+    
+    /**
+     * End of the word starting at {@code i} if, cut off at {@code limit}, it is a code:
+     * 6-20 upper-case letters and digits. Returns -1 otherwise. Callers pass the start
+     * of a word, so the code is always on a word boundary.
+     */
+    private int codeRunEnd(int i, int limit) {
+        int end = wordRunEnd(i, limit);
+        int runLength = end - i;
+        if (runLength < MIN_CODE_LENGTH || runLength > MAX_CODE_LENGTH) {
+            return -1;
+        }
+        for (int k = i; k < end; k++) {
+            char c = text.charAt(k);
+            if (!(c >= 'A' && c <= 'Z') && !isDigit(c)) {
+                return -1;
+            }
+        }
+        return end;
+    }
+    
+    private int firstCodeRun(int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (!isWord(text.charAt(i))) {
+                i++;
+            } else if (codeRunEnd(i, end) >= 0) {
+                return i;
+            } else {
+                i = wordRunEnd(i, end);
+            }
+        }
+        return -1;
+    }
+    
+    private String slice(int start, int end) {
+        return text.subSequence(start, end).toString();
+    }
+    
+    private int wordRunEnd(int i, int limit) {
+        while (i < limit && isWord(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    
+    private int skipWhitespace(int i) {
+        while (i < length && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    
+    /** Start of the whitespace run that ends at {@code i}, but not before {@code floor}. */
+    private int whitespaceRunStart(int i, int floor) {
+        while (i > floor && isWhitespace(text.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+    
+    private boolean hasNewline(int start, int end) {
+        int newline = firstAtOrAfter(newlines, start);
+        return newline >= 0 && newline < end;
+    }
+    
+    private boolean isTrimmedEmpty(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean containsIgnoreCase(int start, int end, String lowerCaseToken) {
+        for (int i = start; i + lowerCaseToken.length() <= end; i++) {
+            if (matchesIgnoreCase(i, lowerCaseToken)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** ASCII case-insensitive comparison, like a regex with {@code (?i)}. */
+    private boolean matchesIgnoreCase(int i, String lowerCaseToken) {
+        if (i + lowerCaseToken.length() > length) {
+            return false;
+        }
+        for (int k = 0; k < lowerCaseToken.length(); k++) {
+            char c = text.charAt(i + k);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCaseToken.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private boolean isOrdinalSuffix(int i) {
+        return matchesIgnoreCase(i, "st") || matchesIgnoreCase(i, "nd")
+                || matchesIgnoreCase(i, "rd") || matchesIgnoreCase(i, "th");
+    }
+    
+    private boolean isWordAt(int i) {
+        return i < length && isWord(text.charAt(i));
+    }
+    
+    private boolean isWhitespaceAt(int i) {
+        return i < length && isWhitespace(text.charAt(i));
+    }
+    
+    private static int firstAtOrAfter(int[] positions, int position) {
+        int index = Arrays.binarySearch(positions, position);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < positions.length ? positions[index] : -1;
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    private static boolean isAsciiAlphanumeric(char c) {
+        return isDigit(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+    
+    // Same character classes as \w and \s in java.util.regex
+    private static boolean isWord(char c) {
+        return isAsciiAlphanumeric(c) || c == '_';
+    }
+    
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    static String extractRewardFromSection(String section, String code) {
+        // Look for reward keyword
+        String lowerSection = section.toLowerCase();
+        int rewardIndex = lowerSection.indexOf("reward");
+        
+        if (rewardIndex >= 0) {
+            // Extract text after "reward:"
+            String afterReward = section.substring(rewardIndex);
+            int colonIndex = afterReward.indexOf(":");
+            if (colonIndex >= 0) {
+                String rewardText = afterReward.substring(colonIndex + 1).trim();
+                
+                // Clean up the reward text
+                rewardText = removeWord(rewardText, code).trim();
+                rewardText = WHITESPACE.matcher(rewardText).replaceAll(" ");
+                
+                if (!rewardText.isEmpty() && rewardText.length() < 100) {
+                    return rewardText;
+                }
+            }
+        }
+        
+        // Fallback: look for common reward patterns
+        if (lowerSection.contains("gems") || lowerSection.contains("pack")) {
+            String[] words = WHITESPACE.split(section);
+            StringBuilder reward = new StringBuilder();
+            
+            for (String word : words) {
+                String lowerWord = word.toLowerCase();
+                if (lowerWord.contains("gem") ||
+                    lowerWord.contains("pack") ||
+                    lowerWord.contains("point") ||
+                    isAllDigits(word)) {
+                    reward.append(word).append(" ");
+                }
+            }
+            
+            String result = reward.toString().trim();
+            if (!result.isEmpty()) {
+                return result;
+            }
+        }
+        
+        return "Unknown reward";
+    }
+    
+    static String extractDateFromSection(String section) {
+        Matcher dateMatcher = DATE_PATTERN.matcher(section);
+        if (dateMatcher.find()) {
+            return dateMatcher.group(0);
+        }
+        return "Unknown";
+    }
+    
+    /** Removes every occurrence of {@code word} that stands on word boundaries at both ends. */
+    private static String removeWord(String text, String word) {
+        StringBuilder result = null;
+        int copied = 0;
+        int from = 0;
+        int at;
+        while ((at = text.indexOf(word, from)) >= 0) {
+            int after = at + word.length();
+            boolean boundaryBefore = at == 0 || !isWord(text.charAt(at - 1));
+            boolean boundaryAfter = after == text.length() || !isWord(text.charAt(after));
+            if (boundaryBefore && boundaryAfter) {
+                if (result == null) {
+                    result = new StringBuilder(text.length());
+                }
+                result.append(text, copied, at);
+                copied = after;
+                from = after;
+            } else {
+                from = at + 1;
+            }
+        }
+        if (result == null) {
+            return text;
+        }
+        return result.append(text, copied, text.length()).toString();
+    }
+    
+    private static boolean isAllDigits(String word) {
+        if (word.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (!isDigit(word.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private record CopyMatch(int dateEnd, int codeStart, int codeEnd, int end) {
+    }
+}
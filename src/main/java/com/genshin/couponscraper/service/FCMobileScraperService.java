@@ -1,7 +1,12 @@
 package com.genshin.couponscraper.service;
 
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.fetch.ContentRegion;
+import com.genshin.couponscraper.fetch.FilteringWebConnection;
+import com.genshin.couponscraper.fetch.PageFetcher;
+import com.genshin.couponscraper.fetch.WebClientPool;
 import com.genshin.couponscraper.model.CouponResponse;
-import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.genshin.couponscraper.model.Game;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import org.jsoup.Jsoup;
@@ -12,10 +17,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -25,81 +32,133 @@ public class FCMobileScraperService {
     private static final Logger logger = LoggerFactory.getLogger(FCMobileScraperService.class);
     private static final String FC_MOBILE_URL = "https://www.fcmobileforum.com/fcmobile-redeem-codes";
     private static final int TIMEOUT_MS = 20000;
-    private static final int MAX_RETRIES = 2;
     
-    private static final Pattern CODE_PATTERN = Pattern.compile("^[A-Z0-9]{6,20}$");
-    private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{1,2})(?:st|nd|rd|th)?\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+    // Wix renders the code list inside <main>; the rest of the page churns on every load
+    private static final ContentRegion CONTENT_REGION = ContentRegion.between("<main", "</main>");
     
-    // Blocklist for common false positives
-    private static final Set<String> BLOCKLIST = new HashSet<>(Arrays.asList(
-        "REWARD", "REWARDS", "PACK", "PACKS", "GEMS", "COIN", "COINS", "PLAYER", "PLAYERS",
-        "STANDARD", "ANNIVERSARY", "LIMITED", "ITEM", "ITEMS", "CARD", "CARDS", "ACTIVE",
-        "EXPIRED", "CODE", "CODES", "REDEEM", "BUTTON", "HOME", "MORE", "CLOSE", "MOBILE",
-        "TRUE", "FALSE", "LABEL", "PAGE", "SECTION", "NAVBAR", "MENU", "FOOTER", "HEADER",
-        "COPY", "HERE", "OCTOBER", "SEPTEMBER", "AUGUST", "JANUARY", "MARCH", "MAY",
-        "POINTS", "RANK", "ICONS", "FESTIVAL", "SHANGHAI", "TICKETS"
-    ));
+    // A dated code followed by its COPY button means the code list has been rendered
+    private static final Pattern RENDERED_CODE_PATTERN = Pattern.compile(
+            "(?i)\\d{1,2}(?:st|nd|rd|th)?\\s+\\w+\\s+[A-Z0-9]{6,20}\\s+COPY");
+    
+    // Codes are 6-20 upper-case letters and digits with at least two letters; the rest are
+    // words from the page (rewards, buttons, navigation, months) that look like codes
+    private static final CodeValidator CODE_VALIDATOR = CodeValidator.builder()
+            .length(6, 20)
+            .upperCaseLetters()
+            .digits()
+            .minLetters(2)
+            .blockWords(
+                "REWARD", "REWARDS", "PACK", "PACKS", "GEMS", "COIN", "COINS", "PLAYER", "PLAYERS",
+                "STANDARD", "ANNIVERSARY", "LIMITED", "ITEM", "ITEMS", "CARD", "CARDS", "ACTIVE",
+                "EXPIRED", "CODE", "CODES", "REDEEM", "BUTTON", "HOME", "MORE", "CLOSE", "MOBILE",
+                "TRUE", "FALSE", "LABEL", "PAGE", "SECTION", "NAVBAR", "MENU", "FOOTER", "HEADER",
+                "COPY", "HERE", "OCTOBER", "SEPTEMBER", "AUGUST", "JANUARY", "MARCH", "MAY",
+                "POINTS", "RANK", "ICONS", "FESTIVAL", "SHANGHAI", "TICKETS")
+            .blockPrefixes("COPY", "HERE", "MORE", "PAGE", "HOME", "MENU", "EXPIRED")
+            .ignoreCase()
+            .build();
+    
+    private final PageFetcher pageFetcher;
+    private final WebClientPool webClientPool;
+    private final Duration renderWait;
+    private final RetryExecutor retryExecutor;
+    private final LatencyHistogram jsoupLatency = new LatencyHistogram();
+    private final LatencyHistogram renderReadiness = new LatencyHistogram();
+    private final LongAdder renderTimeouts = new LongAdder();
+    
+    // Fingerprint of the last rendered page's content region and the codes extracted from it
+    private volatile RenderedCodes lastRendered;
+    
+    public FCMobileScraperService(PageFetcher pageFetcher, WebClientPool webClientPool,
+                                  RetryExecutor retryExecutor, CouponScraperProperties properties) {
+        this.pageFetcher = pageFetcher;
+        this.webClientPool = webClientPool;
+        this.retryExecutor = retryExecutor;
+        this.renderWait = properties.getHtmlUnit().getRenderWait();
+    }
     
     public List<CouponResponse> getActiveCoupons() {
+        try {
+            return retryExecutor.execute(Game.FC_MOBILE.getSlug(), this::fetchActiveCoupons);
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Same as {@link #getActiveCoupons()}, but makes a single attempt and throws when it
+     * came back empty instead of returning an empty list.
+     * <p>
+     * JSoup goes first (more reliable on cloud platforms). HtmlUnit is started next to it
+     * once JSoup has run longer than its usual latency (see {@link RetryPolicy#hedgeDelay}),
+     * or right away when JSoup finds nothing; the first non-empty result wins.
+     */
+    public List<CouponResponse> fetchActiveCoupons() throws IOException {
         logger.info("Fetching FC Mobile codes from: {}", FC_MOBILE_URL);
         
-        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
-            try {
-                logger.info("Attempt {} of {}", attempt, MAX_RETRIES);
-                
-                // Try JSoup first (more reliable on cloud platforms)
-                List<CouponResponse> codes = scrapeWithJSoup();
-                if (!codes.isEmpty()) {
-                    logger.info("JSoup found {} FC Mobile codes", codes.size());
-                    return codes;
-                }
-                
-                // Fallback to HtmlUnit if JSoup fails
-                logger.info("JSoup returned no codes, trying HtmlUnit fallback...");
-                codes = scrapeWithHtmlUnit();
-                if (!codes.isEmpty()) {
-                    logger.info("HtmlUnit fallback found {} FC Mobile codes", codes.size());
-                    return codes;
-                }
-                
-            } catch (Exception e) {
-                logger.warn("Attempt {} failed: {}", attempt, e.getMessage());
-                if (attempt < MAX_RETRIES) {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException ignored) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            }
-        }
+        Duration hedgeAfter = retryExecutor.getPolicy().hedgeDelay(jsoupLatency);
+        List<CouponResponse> codes = retryExecutor.hedge(Game.FC_MOBILE.getSlug() + "-page", this::scrapeWithJSoup,
+                this::scrapeWithHtmlUnit, hedgeAfter, found -> !found.isEmpty());
         
-        logger.error("Failed to fetch FC Mobile codes after {} attempts", MAX_RETRIES);
-        return new ArrayList<>();
+        if (codes.isEmpty()) {
+            throw new IOException("No FC Mobile codes found with JSoup or HtmlUnit");
+        }
+        logger.info("Found {} FC Mobile codes", codes.size());
+        return codes;
+    }
+    
+    /**
+     * Latency of the plain JSoup fetch, from which the HtmlUnit hedge delay is derived.
+     */
+    public Map<String, Object> getJSoupStats() {
+        return jsoupLatency.getStats();
+    }
+    
+    /**
+     * Time from page load until the rendered code list appeared, plus the number of
+     * renders that gave up at {@code coupon.html-unit.render-wait}.
+     */
+    public Map<String, Object> getRenderStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(renderReadiness.getStats());
+        stats.put("timeouts", renderTimeouts.sum());
+        return stats;
     }
     
     private List<CouponResponse> scrapeWithHtmlUnit() {
-        try (WebClient webClient = new WebClient(BrowserVersion.CHROME)) {
-            // Configure for production environment
-            webClient.getOptions().setJavaScriptEnabled(true);
-            webClient.getOptions().setCssEnabled(false);
-            webClient.getOptions().setDownloadImages(false);
-            webClient.getOptions().setThrowExceptionOnScriptError(false);
-            webClient.getOptions().setThrowExceptionOnFailingStatusCode(false);
-            webClient.getOptions().setTimeout(TIMEOUT_MS);
-            webClient.getOptions().setUseInsecureSSL(true);
+        try (WebClientPool.Lease lease = webClientPool.lease()) {
+            WebClient webClient = lease.getWebClient();
             
-            // Set user agent for better compatibility
-            webClient.addRequestHeader("User-Agent", 
-                "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/114.0.0.0 Mobile Safari/537.36");
-            
-            HtmlPage page = webClient.getPage(FC_MOBILE_URL);
-            webClient.waitForBackgroundJavaScript(3000); // Reduced wait time for production
+            HtmlPage page;
+            try {
+                page = webClient.getPage(FC_MOBILE_URL);
+                Optional<Duration> timeToReady = lease.awaitReady(
+                        page, text -> RENDERED_CODE_PATTERN.matcher(text).find(), renderWait);
+                if (timeToReady.isPresent()) {
+                    renderReadiness.record(timeToReady.get());
+                } else {
+                    renderTimeouts.increment();
+                    logger.debug("FC Mobile codes did not appear within {}", renderWait);
+                }
+            } catch (Exception e) {
+                lease.markBroken();
+                throw e;
+            }
+            FilteringWebConnection.Stats resources = lease.getResourceStats();
+            logger.debug("Rendered FC Mobile page: {} requests ({} bytes) fetched, {} blocked",
+                    resources.allowedRequests(), resources.allowedBytes(), resources.blockedRequests());
             
             String pageSource = page.asXml();
-            Document doc = Jsoup.parse(pageSource);
+            String fingerprint = CONTENT_REGION.fingerprint(pageSource);
+            RenderedCodes previous = lastRendered;
+            if (previous != null && previous.fingerprint.equals(fingerprint)) {
+                logger.debug("Rendered FC Mobile content unchanged, reusing {} codes", previous.codes.size());
+                return previous.codes;
+            }
             
-            return extractCodesFromDocument(doc);
+            Document doc = Jsoup.parse(pageSource);
+            List<CouponResponse> codes = extractCodesFromDocument(doc);
+            lastRendered = new RenderedCodes(fingerprint, codes);
+            return codes;
             
         } catch (Exception e) {
             logger.warn("HtmlUnit scraping failed: {}", e.getMessage());
@@ -108,142 +167,28 @@ public class FCMobileScraperService {
     }
     
     private List<CouponResponse> scrapeWithJSoup() {
+        long start = System.nanoTime();
         try {
-            Document doc = Jsoup.connect(FC_MOBILE_URL)
-                    .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
-                    .timeout(TIMEOUT_MS)
-                    .get();
-            
-            return extractCodesFromDocument(doc);
+            return pageFetcher.fetchParsed(FC_MOBILE_URL, TIMEOUT_MS, CONTENT_REGION, this::extractCodesFromDocument);
             
         } catch (Exception e) {
             logger.warn("JSoup scraping failed: {}", e.getMessage());
             return new ArrayList<>();
+        } finally {
+            jsoupLatency.record(Duration.ofNanos(System.nanoTime() - start));
         }
     }
     
     private List<CouponResponse> extractCodesFromDocument(Document doc) {
-        List<CouponResponse> activeCodes = new ArrayList<>();
         String fullText = doc.text();
         
         logger.debug("Parsing document for active codes...");
         
-        // Strategy 1: Look for active codes with COPY button (indicates active status)
-        // Pattern: "Reward: ... Date CODE COPY" or "Date CODE COPY"
-        Pattern activeWithCopyPattern = Pattern.compile(
-            "(?i)(?:reward:\\s*([^\\n]*?)\\s*)?" +  // Optional reward
-            "(\\d{1,2}(?:st|nd|rd|th)?\\s+\\w+)\\s+" +  // Date
-            "([A-Z0-9]{6,20})\\s+" +  // Code
-            "COPY",  // COPY button indicates active
-            Pattern.MULTILINE
-        );
-        
-        Matcher copyMatcher = activeWithCopyPattern.matcher(fullText);
-        while (copyMatcher.find()) {
-            String reward = copyMatcher.group(1);
-            String date = copyMatcher.group(2);
-            String code = copyMatcher.group(3);
-            
-            if (isValidCode(code)) {
-                String cleanReward = (reward != null && !reward.trim().isEmpty()) ? 
-                    reward.trim() : "Unknown reward";
-                
-                CouponResponse coupon = new CouponResponse(code, cleanReward, date, "Active", "Global");
-                activeCodes.add(coupon);
-                logger.debug("Found active code with COPY: {} | Reward: {} | Date: {}", 
-                    code, cleanReward, date);
-            }
-        }
-        
-        // Strategy 2: Look for codes that are NOT followed by "Expired"
-        // Split text into sections and analyze each
-        String[] sections = fullText.split("(?i)(?=\\d{1,2}(?:st|nd|rd|th)?\\s+\\w+)");
-        
-        for (String section : sections) {
-            if (section.trim().isEmpty()) continue;
-            
-            // Skip sections that contain "Expired"
-            if (section.toLowerCase().contains("expired")) {
-                continue;
-            }
-            
-            // Look for codes in this section
-            Pattern codeInSectionPattern = Pattern.compile("\\b([A-Z0-9]{6,20})\\b");
-            Matcher codeMatcher = codeInSectionPattern.matcher(section);
-            
-            while (codeMatcher.find()) {
-                String code = codeMatcher.group(1);
-                
-                if (!isValidCode(code)) continue;
-                
-                // Check if already found
-                boolean alreadyExists = activeCodes.stream()
-                    .anyMatch(c -> c.getCode().equals(code));
-                if (alreadyExists) continue;
-                
-                // Extract reward and date from this section
-                String reward = extractRewardFromSection(section, code);
-                String date = extractDateFromSection(section);
-                
-                CouponResponse coupon = new CouponResponse(code, reward, date, "Active", "Global");
-                activeCodes.add(coupon);
-                logger.debug("Found active code in section: {} | Reward: {} | Date: {}", 
-                    code, reward, date);
-            }
-        }
-        
-        // Strategy 3: Look for structured reward blocks
-        // "Reward: ... Date" followed by code
-        Pattern rewardBlockPattern = Pattern.compile(
-            "(?i)reward:\\s*([^\\n]*?)\\s*" +  // Reward text
-            "(\\d{1,2}(?:st|nd|rd|th)?\\s+\\w+)",  // Date
-            Pattern.MULTILINE
-        );
-        
-        Matcher rewardMatcher = rewardBlockPattern.matcher(fullText);
-        while (rewardMatcher.find()) {
-            String reward = rewardMatcher.group(1).trim();
-            String date = rewardMatcher.group(2);
-            
-            // Look for code after this reward block
-            int endPos = rewardMatcher.end();
-            String afterReward = fullText.substring(endPos, Math.min(endPos + 100, fullText.length()));
-            
-            // Skip if this block contains "Expired"
-            if (afterReward.toLowerCase().contains("expired")) {
-                continue;
-            }
-            
-            Pattern codeAfterRewardPattern = Pattern.compile("\\b([A-Z0-9]{6,20})\\b");
-            Matcher codeAfterMatcher = codeAfterRewardPattern.matcher(afterReward);
-            
-            if (codeAfterMatcher.find()) {
-                String code = codeAfterMatcher.group(1);
-                
-                if (isValidCode(code)) {
-                    // Check if already found
-                    boolean alreadyExists = activeCodes.stream()
-                        .anyMatch(c -> c.getCode().equals(code));
-                    
-                    if (!alreadyExists) {
-                        CouponResponse coupon = new CouponResponse(code, reward, date, "Active", "Global");
-                        activeCodes.add(coupon);
-                        logger.debug("Found code after reward block: {} | Reward: {} | Date: {}", 
-                            code, reward, date);
-                    }
-                }
-            }
-        }
-        
-        // Remove duplicates and sort
-        Map<String, CouponResponse> uniqueCodes = new LinkedHashMap<>();
-        for (CouponResponse code : activeCodes) {
-            uniqueCodes.put(code.getCode(), code);
-        }
+        List<CouponResponse> uniqueCodes = FCMobileCodeScanner.scan(fullText, CODE_VALIDATOR::isValid);
         
         logger.info("Found {} unique active codes", uniqueCodes.size());
         
-        return uniqueCodes.values().stream()
+        return uniqueCodes.stream()
                 .sorted((a, b) -> {
                     LocalDate dateA = parseDate(a.getDate());
                     LocalDate dateB = parseDate(b.getDate());
@@ -255,59 +200,6 @@ public class FCMobileScraperService {
                 .collect(Collectors.toList());
     }
     
-    private String extractRewardFromSection(String section, String code) {
-        // Look for reward keyword
-        String lowerSection = section.toLowerCase();
-        int rewardIndex = lowerSection.indexOf("reward");
-        
-        if (rewardIndex >= 0) {
-            // Extract text after "reward:"
-            String afterReward = section.substring(rewardIndex);
-            int colonIndex = afterReward.indexOf(":");
-            if (colonIndex >= 0) {
-                String rewardText = afterReward.substring(colonIndex + 1).trim();
-                
-                // Clean up the reward text
-                rewardText = rewardText.replaceAll("\\b" + code + "\\b", "").trim();
-                rewardText = rewardText.replaceAll("\\s+", " ");
-                
-                if (!rewardText.isEmpty() && rewardText.length() < 100) {
-                    return rewardText;
-                }
-            }
-        }
-        
-        // Fallback: look for common reward patterns
-        if (section.toLowerCase().contains("gems") || section.toLowerCase().contains("pack")) {
-            String[] words = section.split("\\s+");
-            StringBuilder reward = new StringBuilder();
-            
-            for (String word : words) {
-                if (word.toLowerCase().contains("gem") || 
-                    word.toLowerCase().contains("pack") || 
-                    word.toLowerCase().contains("point") ||
-                    word.matches("\\d+")) {
-                    reward.append(word).append(" ");
-                }
-            }
-            
-            String result = reward.toString().trim();
-            if (!result.isEmpty()) {
-                return result;
-            }
-        }
-        
-        return "Unknown reward";
-    }
-    
-    private String extractDateFromSection(String section) {
-        Matcher dateMatcher = DATE_PATTERN.matcher(section);
-        if (dateMatcher.find()) {
-            return dateMatcher.group(0);
-        }
-        return "Unknown";
-    }
-    
     private LocalDate parseDate(String dateStr) {
         if (dateStr == null || dateStr.isBlank() || "Unknown".equals(dateStr)) {
             return null;
@@ -333,42 +225,7 @@ public class FCMobileScraperService {
         return null;
     }
     
-    private boolean isValidCode(String code) {
-        if (code == null || code.isBlank()) {
-            return false;
-        }
-        
-        // Quick length check
-        if (code.length() < 6 || code.length() > 20) {
-            return false;
-        }
-        
-        // Quick blocklist check
-        if (BLOCKLIST.contains(code.toUpperCase())) {
-            return false;
-        }
-        
-        // Pattern check
-        if (!CODE_PATTERN.matcher(code).matches()) {
-            return false;
-        }
-        
-        // Skip purely numeric codes
-        if (code.matches("\\d{6,}")) {
-            return false;
-        }
-        
-        // Must have at least 2 letters
-        long letterCount = code.chars().filter(Character::isLetter).count();
-        if (letterCount < 2) {
-            return false;
-        }
-        
-        // Additional validation: Skip common false positives
-        if (code.matches("^(COPY|HERE|MORE|PAGE|HOME|MENU|EXPIRED).*")) {
-            return false;
-        }
-        
-        return true;
+    
+    private record RenderedCodes(String fingerprint, List<CouponResponse> codes) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+package com.genshin.couponscraper.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed, roughly exponential millisecond buckets.
+ * <p>
+ * Percentiles are reported as the upper bound of the bucket they fall in, which is
+ * precise enough to tune timeouts from and costs one array scan.
+ */
+public class LatencyHistogram {
+    
+    private static final long[] BOUNDS_MILLIS = {
+        10, 25, 50, 100, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 5000, 10000, 20000, Long.MAX_VALUE
+    };
+    
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMillis = new LongAdder();
+    private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+    
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+    
+    public void record(Duration latency) {
+        long millis = Math.max(0, latency.toMillis());
+        int bucket = 0;
+        while (millis > BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        count.increment();
+        totalMillis.add(millis);
+        maxMillis.accumulate(millis);
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    /**
+     * Upper bound of the bucket holding the given percentile (0-100), or zero when
+     * nothing has been recorded. The open-ended last bucket reports the maximum seen.
+     */
+    public Duration percentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i].sum();
+            if (seen >= Math.max(1, rank)) {
+                return Duration.ofMillis(Math.min(BOUNDS_MILLIS[i], maxMillis.get()));
+            }
+        }
+        return Duration.ofMillis(maxMillis.get());
+    }
+    
+    public Map<String, Object> getStats() {
+        long total = count.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", total);
+        stats.put("meanMillis", total == 0 ? 0 : totalMillis.sum() / total);
+        stats.put("p50Millis", percentile(50).toMillis());
+        stats.put("p95Millis", percentile(95).toMillis());
+        stats.put("p99Millis", percentile(99).toMillis());
+        stats.put("maxMillis", maxMillis.get());
+        return stats;
+    }
+}
@@ -0,0 +1,264 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Runs scrapes under the shared {@link RetryPolicy}.
+ * <p>
+ * Attempts run on the {@code scrapeAttemptExecutor}. A failed attempt is not retried
+ * from a sleeping thread: the next attempt is put on the {@code retryScheduler} after
+ * the policy's jittered backoff, and no thread is held while it waits. {@link #hedge}
+ * starts a second strategy next to a slow first one and takes whichever result is
+ * accepted first. Attempts, retries and hedges are counted per call name.
+ */
+@Component
+public class RetryExecutor {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RetryExecutor.class);
+    
+    private final ExecutorService attemptExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final RetryPolicy policy;
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<>();
+    
+    public RetryExecutor(@Qualifier("scrapeAttemptExecutor") ExecutorService attemptExecutor,
+                         @Qualifier("retryScheduler") ScheduledExecutorService scheduler,
+                         CouponScraperProperties properties) {
+        this.attemptExecutor = attemptExecutor;
+        this.scheduler = scheduler;
+        this.policy = RetryPolicy.from(properties.getRetry());
+    }
+    
+    public RetryPolicy getPolicy() {
+        return policy;
+    }
+    
+    /**
+     * Runs {@code call} until it returns or throws something other than an
+     * {@link IOException}, for at most {@link RetryPolicy#maxAttempts()} attempts, and
+     * waits for the outcome. The last attempt's exception is rethrown.
+     */
+    public <T> T execute(String name, SingleFlight.Call<T> call) throws IOException {
+        return await(executeAsync(name, call));
+    }
+    
+    /**
+     * Like {@link #execute}, but returns at once; the future completes with the first
+     * successful attempt or the last failure.
+     */
+    public <T> CompletableFuture<T> executeAsync(String name, SingleFlight.Call<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(name, call, 1, result);
+        return result;
+    }
+    
+    /**
+     * Runs {@code primary} and, once it has taken longer than {@code hedgeAfter} or has
+     * finished without an accepted result, also {@code secondary}. Returns the first
+     * result {@code accept} takes; when neither produced one, the last result that
+     * completed, or the first failure if both failed.
+     */
+    public <T> T hedge(String name, SingleFlight.Call<T> primary, SingleFlight.Call<T> secondary,
+                       Duration hedgeAfter, Predicate<T> accept) throws IOException {
+        Counters stats = counters(name);
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        AtomicBoolean hedged = new AtomicBoolean();
+        AtomicBoolean decided = new AtomicBoolean();
+        AtomicReference<T> lastResult = new AtomicReference<>();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        
+        Runnable finishOne = () -> {
+            if (running.decrementAndGet() == 0 && decided.compareAndSet(false, true)) {
+                Throwable failure = firstFailure.get();
+                if (lastResult.get() != null || failure == null) {
+                    winner.complete(lastResult.get());
+                } else {
+                    winner.completeExceptionally(failure);
+                }
+            }
+        };
+        Runnable startSecondary = () -> {
+            if (decided.get() || !hedged.compareAndSet(false, true)) {
+                return;
+            }
+            running.incrementAndGet();
+            stats.hedges.increment();
+            logger.debug("Starting hedged attempt for {}", name);
+            submit(secondary).whenComplete((value, error) -> {
+                if (error == null && accept.test(value) && decided.compareAndSet(false, true)) {
+                    stats.hedgeWins.increment();
+                    logger.info("Hedged attempt won for {}", name);
+                    winner.complete(value);
+                }
+                record(value, error, lastResult, firstFailure);
+                finishOne.run();
+            });
+        };
+        
+        stats.attempts.increment();
+        ScheduledFuture<?> timer = scheduler.schedule(startSecondary, hedgeAfter.toMillis(), TimeUnit.MILLISECONDS);
+        submit(primary).whenComplete((value, error) -> {
+            if (error == null && accept.test(value) && decided.compareAndSet(false, true)) {
+                winner.complete(value);
+                timer.cancel(false);
+            } else {
+                startSecondary.run();
+            }
+            record(value, error, lastResult, firstFailure);
+            finishOne.run();
+        });
+        
+        try {
+            return await(winner);
+        } finally {
+            timer.cancel(false);
+        }
+    }
+    
+    /**
+     * Attempts, retries, exhausted retries, hedged attempts and hedges that won, per call name.
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> stats.put(name, counter.toMap()));
+        return stats;
+    }
+    
+    private <T> void attempt(String name, SingleFlight.Call<T> call, int attempt, CompletableFuture<T> result) {
+        Counters stats = counters(name);
+        try {
+            attemptExecutor.execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                stats.attempts.increment();
+                try {
+                    result.complete(call.call());
+                } catch (IOException e) {
+                    if (attempt >= policy.maxAttempts()) {
+                        stats.exhausted.increment();
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    Duration delay = policy.backoff(attempt);
+                    logger.warn("Attempt {} of {} for {} failed, retrying in {} ms: {}",
+                            attempt, policy.maxAttempts(), name, delay.toMillis(), e.getMessage());
+                    stats.retries.increment();
+                    scheduleRetry(name, call, attempt + 1, result, delay);
+                } catch (RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+    
+    private <T> void scheduleRetry(String name, SingleFlight.Call<T> call, int attempt,
+                                   CompletableFuture<T> result, Duration delay) {
+        try {
+            scheduler.schedule(() -> attempt(name, call, attempt, result), delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+    
+    private <T> CompletableFuture<T> submit(SingleFlight.Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            attemptExecutor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    private static <T> void record(T value, Throwable error, AtomicReference<T> lastResult,
+                                   AtomicReference<Throwable> firstFailure) {
+        if (error == null) {
+            lastResult.set(value);
+        } else {
+            firstFailure.compareAndSet(null, error);
+        }
+    }
+    
+    private Counters counters(String name) {
+        return counters.computeIfAbsent(name, n -> new Counters());
+    }
+    
+    /** Waits for {@code future}, rethrowing the failure of the attempt that completed it. */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a scrape");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Scrape was cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    private static class Counters {
+        
+        final LongAdder attempts = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder exhausted = new LongAdder();
+        final LongAdder hedges = new LongAdder();
+        final LongAdder hedgeWins = new LongAdder();
+        
+        Map<String, Long> toMap() {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("attempts", attempts.sum());
+            stats.put("retries", retries.sum());
+            stats.put("exhausted", exhausted.sum());
+            stats.put("hedges", hedges.sum());
+            stats.put("hedgeWins", hedgeWins.sum());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often a failed scrape is retried, how long to back off in between, and when a
+ * slow strategy gets a hedged second one started next to it.
+ *
+ * @param maxAttempts     attempts including the first one
+ * @param initialBackoff  backoff after the first failed attempt
+ * @param maxBackoff      upper bound of the backoff before jitter
+ * @param multiplier      growth of the backoff per failed attempt
+ * @param jitter          fraction (0-1) of each backoff that is randomized away
+ * @param hedgePercentile latency percentile of the first strategy after which the second starts
+ * @param minHedgeDelay   earliest point at which the second strategy starts
+ */
+public record RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, double multiplier,
+                          double jitter, double hedgePercentile, Duration minHedgeDelay) {
+    
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+    }
+    
+    public static RetryPolicy from(CouponScraperProperties.Retry settings) {
+        return new RetryPolicy(settings.getMaxAttempts(), settings.getInitialBackoff(), settings.getMaxBackoff(),
+                settings.getMultiplier(), settings.getJitter(), settings.getHedgePercentile(), settings.getMinHedgeDelay());
+    }
+    
+    /**
+     * The delay before the attempt following {@code failedAttempts} failures: exponential
+     * growth capped at {@link #maxBackoff}, of which up to {@link #jitter} is randomly
+     * taken off so retries of different sources do not line up.
+     */
+    public Duration backoff(int failedAttempts) {
+        double exponential = initialBackoff.toMillis() * Math.pow(multiplier, Math.max(0, failedAttempts - 1));
+        double capped = Math.min(exponential, maxBackoff.toMillis());
+        double jittered = capped * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis(Math.round(jittered));
+    }
+    
+    /**
+     * How long the first strategy may run before the second is started: its
+     * {@link #hedgePercentile} latency so far, but never less than {@link #minHedgeDelay}.
+     */
+    public Duration hedgeDelay(LatencyHistogram firstStrategy) {
+        Duration percentile = firstStrategy.percentile(hedgePercentile);
+        return percentile.compareTo(minHedgeDelay) > 0 ? percentile : minHedgeDelay;
+    }
+}
@@ -0,0 +1,102 @@
+package com.genshin.couponscraper.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses concurrent calls for the same key into one execution.
+ * <p>
+ * The first caller for a key runs the call on its own thread; callers arriving while
+ * it is in flight wait for and share its result (or exception) instead of starting
+ * their own. A waiting caller that is interrupted stops waiting, leaving the execution
+ * to finish for the others. Counters record how many executions ran and how many
+ * callers piggybacked.
+ */
+public class SingleFlight<K, V> {
+    
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws IOException;
+    }
+    
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, LongAdder> executions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, LongAdder> coalesced = new ConcurrentHashMap<>();
+    
+    public V execute(K key, Call<V> call) throws IOException {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+        
+        if (existing != null) {
+            counter(coalesced, key).increment();
+            return await(existing);
+        }
+        
+        counter(executions, key).increment();
+        try {
+            V value = call.call();
+            pending.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+    
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+    
+    public long getExecutions(K key) {
+        LongAdder adder = executions.get(key);
+        return adder == null ? 0 : adder.sum();
+    }
+    
+    public long getCoalesced(K key) {
+        LongAdder adder = coalesced.get(key);
+        return adder == null ? 0 : adder.sum();
+    }
+    
+    public Map<String, Long> stats(K key) {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("executions", getExecutions(key));
+        stats.put("coalesced", getCoalesced(key));
+        return stats;
+    }
+    
+    private static <K> LongAdder counter(ConcurrentMap<K, LongAdder> counters, K key) {
+        return counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+    
+    private static <V> V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a call in flight");
+        } catch (ExecutionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            // Rethrown as is: callers tell failures apart by type, e.g. CircuitOpenException
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+
+/**
+ * Published by {@link CouponCacheService} after every successful scrape, on the thread
+ * that ran it.
+ *
+ * @param previous the snapshot it replaced, or {@code null} for the first scrape of a game
+ * @param snapshot the new snapshot
+ */
+public record SnapshotUpdatedEvent(CouponSnapshot previous, CouponSnapshot snapshot) {
+    
+    public Game game() {
+        return snapshot.getGame();
+    }
+    
+    /** Whether the coupons differ from the previous snapshot, not just the fetch time. */
+    public boolean isChanged() {
+        return previous == null || !previous.getETag().equals(snapshot.getETag());
+    }
+}
@@ -0,0 +1,85 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Parks long-poll requests until their game's coupons change.
+ * <p>
+ * A waiting request is a {@link DeferredResult} in the set of its game and holds no
+ * servlet thread. The refresh that changes the game's coupons completes every waiter
+ * of that game; a waiter whose time runs out first is completed with its timeout
+ * result instead and leaves the set either way. The cache stores a snapshot before
+ * publishing its update, so a waiter checks the cache once registered to catch a change
+ * that landed in between.
+ */
+@Component
+public class SnapshotWatcher {
+    
+    private final CouponCacheService couponCacheService;
+    private final Map<Game, Set<Consumer<CouponSnapshot>>> waiters = new EnumMap<>(Game.class);
+    
+    private final AtomicLong woken = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    
+    public SnapshotWatcher(CouponCacheService couponCacheService) {
+        this.couponCacheService = couponCacheService;
+        for (Game game : Game.values()) {
+            waiters.put(game, ConcurrentHashMap.newKeySet());
+        }
+    }
+    
+    /**
+     * A result completed with {@code onChange} of the game's first snapshot whose ETag
+     * is not {@code eTag}, or with {@code onTimeout} once {@code wait} has elapsed.
+     */
+    public <T> DeferredResult<T> awaitChange(Game game, String eTag, Duration wait,
+                                             Function<CouponSnapshot, T> onChange, Supplier<T> onTimeout) {
+        DeferredResult<T> result = new DeferredResult<>(wait.toMillis(), () -> {
+            timedOut.incrementAndGet();
+            return onTimeout.get();
+        });
+        Set<Consumer<CouponSnapshot>> gameWaiters = waiters.get(game);
+        Consumer<CouponSnapshot> waiter = snapshot -> {
+            if (!result.isSetOrExpired() && result.setResult(onChange.apply(snapshot))) {
+                woken.incrementAndGet();
+            }
+        };
+        result.onCompletion(() -> gameWaiters.remove(waiter));
+        gameWaiters.add(waiter);
+        
+        couponCacheService.peekSnapshot(game)
+                .filter(current -> !current.getETag().equals(eTag))
+                .ifPresent(waiter);
+        return result;
+    }
+    
+    @EventListener
+    public void onSnapshotUpdated(SnapshotUpdatedEvent event) {
+        if (event.isChanged()) {
+            waiters.get(event.game()).forEach(waiter -> waiter.accept(event.snapshot()));
+        }
+    }
+    
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("waiting", (long) waiters.values().stream().mapToInt(Set::size).sum());
+        stats.put("woken", woken.get());
+        stats.put("timedOut", timedOut.get());
+        return stats;
+    }
+}
@@ -0,0 +1,153 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.service.WikiTableExtractor.ColumnReader;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Column readers shared by the HoYoverse fandom wikis, whose code tables list the code,
+ * server, rewards and a free-text duration cell.
+ */
+final class WikiColumns {
+    
+    private static final Evaluator CODE_MARKUP = QueryParser.parse("b, code");
+    private static final Evaluator LINKS = QueryParser.parse("a");
+    private static final Evaluator ITEM_TEXT = QueryParser.parse(".item-text");
+    
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // Codes like "EKLP57EFE4G4" written inline in the cell text
+    private static final Pattern CODE_IN_TEXT = Pattern.compile("([A-Z0-9]{8,})");
+    private static final Pattern DATE_PATTERN = Pattern.compile(
+            "(\\w+\\s+\\d{1,2},?\\s+\\d{4}|\\d{1,2}\\w{2}\\s+\\w+\\s+\\d{4}|\\w+\\s+\\d{1,2}\\w{2}|\\d{1,2}\\w{2}\\s+\\w+)");
+    private static final Pattern VALID = Pattern.compile("Valid");
+    private static final Pattern VALID_SUFFIX = Pattern.compile("Valid.*");
+    private static final Pattern[] MONTH_DATES = {
+            Pattern.compile("October (\\d+), (\\d+)"),
+            Pattern.compile("September (\\d+), (\\d+)"),
+            Pattern.compile("November (\\d+), (\\d+)")
+    };
+    private static final String[] ORDINAL_DATES = {"$1th October $2", "$1th September $2", "$1th November $2"};
+    
+    private WikiColumns() {
+    }
+    
+    /** Reads the code from bold or {@code <code>} markup, then links, then an inline run of upper-case letters and digits. */
+    static ColumnReader codeFromMarkup(CodeValidator validator) {
+        return cell -> {
+            Element codeCell = cell.element();
+            Element bold = codeCell.selectFirst(CODE_MARKUP);
+            if (bold != null) {
+                String code = bold.text().trim();
+                if (validator.isValid(code)) {
+                    return code;
+                }
+            }
+            
+            Elements links = codeCell.select(LINKS);
+            for (Element link : links) {
+                String code = link.text().trim();
+                if (validator.isValid(code)) {
+                    return code;
+                }
+            }
+            
+            Matcher matcher = CODE_IN_TEXT.matcher(cell.text());
+            if (matcher.find()) {
+                String code = matcher.group(1);
+                if (validator.isValid(code)) {
+                    return code;
+                }
+            }
+            
+            return null;
+        };
+    }
+    
+    /** Joins the cell's {@code .item-text} entries with commas, or falls back to the cell text. */
+    static ColumnReader itemRewards() {
+        return cell -> {
+            Elements items = cell.element().select(ITEM_TEXT);
+            if (items.isEmpty()) {
+                return cleanRewardText(cell.text());
+            }
+            
+            StringBuilder rewards = new StringBuilder();
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    rewards.append(", ");
+                }
+                rewards.append(cleanRewardText(items.get(i).text()));
+            }
+            return rewards.toString();
+        };
+    }
+    
+    /**
+     * Reads the first date of a duration cell such as "Discovered: October 7, 2025 Valid
+     * until: ...", falling back to the text between {@code label} and "Valid".
+     */
+    static ColumnReader dateFromDuration(String label) {
+        Pattern labelPattern = Pattern.compile(Pattern.quote(label));
+        Pattern labelPrefix = Pattern.compile(Pattern.quote(label) + "\\s*");
+        
+        return cell -> {
+            String duration = cell.text();
+            Matcher matcher = DATE_PATTERN.matcher(duration);
+            if (matcher.find()) {
+                return formatDate(matcher.group(1), labelPrefix);
+            }
+            
+            if (duration.contains(label)) {
+                String[] parts = labelPattern.split(duration);
+                if (parts.length > 1) {
+                    return formatDate(VALID.split(parts[1])[0].trim(), labelPrefix);
+                }
+            }
+            
+            return "Unknown";
+        };
+    }
+    
+    /** "Expired" for expired or invalid codes, "Active (Indefinite)" for codes without an end date. */
+    static String durationStatus(WikiTableExtractor.Cell cell) {
+        String duration = cell.text().toLowerCase();
+        
+        if (duration.contains("expired") || duration.contains("invalid")) {
+            return "Expired";
+        } else if (duration.contains("indefinite")) {
+            return "Active (Indefinite)";
+        } else {
+            return "Active";
+        }
+    }
+    
+    /** Whether a duration cell does not mark its code as expired, invalid or used up. */
+    static boolean isActiveDuration(String duration) {
+        String lowerDuration = duration.toLowerCase();
+        return !lowerDuration.contains("expired") &&
+               !lowerDuration.contains("invalid") &&
+               !lowerDuration.contains("hit max usage");
+    }
+    
+    private static String cleanRewardText(String text) {
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ").replace("×", " x");
+    }
+    
+    private static String formatDate(String rawDate, Pattern labelPrefix) {
+        rawDate = labelPrefix.matcher(rawDate.trim()).replaceAll("");
+        rawDate = VALID_SUFFIX.matcher(rawDate).replaceAll("");
+        rawDate = WHITESPACE.matcher(rawDate).replaceAll(" ");
+        
+        // Convert month names to ordinal format
+        for (int i = 0; i < MONTH_DATES.length; i++) {
+            rawDate = MONTH_DATES[i].matcher(rawDate).replaceAll(ORDINAL_DATES[i]);
+        }
+        
+        return rawDate;
+    }
+}
@@ -0,0 +1,71 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.fetch.ContentRegion;
+import com.genshin.couponscraper.fetch.MediaWikiClient;
+import com.genshin.couponscraper.fetch.PageFetcher;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.Game;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Fetches the code table of a fandom wiki article, either from the rendered page or,
+ * in {@code section} mode, from just the codes section through the MediaWiki API.
+ * The mode, base URL and section heading are configured per game under
+ * {@code coupon.wiki}; section mode falls back to the page when the section is missing,
+ * and is skipped for pages whose codes are not under a heading.
+ */
+@Component
+public class WikiCouponFetcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WikiCouponFetcher.class);
+    
+    private final PageFetcher pageFetcher;
+    private final MediaWikiClient mediaWikiClient;
+    private final CouponScraperProperties.Wiki settings;
+    
+    public WikiCouponFetcher(PageFetcher pageFetcher, MediaWikiClient mediaWikiClient, CouponScraperProperties properties) {
+        this.pageFetcher = pageFetcher;
+        this.mediaWikiClient = mediaWikiClient;
+        this.settings = properties.getWiki();
+    }
+    
+    /**
+     * Where a game's codes live on its wiki.
+     *
+     * @param baseUrl      wiki root, e.g. {@code https://genshin-impact.fandom.com}
+     * @param title        article title as used in its URL, e.g. {@code Promotional_Code}
+     * @param codesSection heading of the section holding the code table, or blank when the
+     *                     table sits in the lead section above the first heading
+     */
+    public record WikiPage(String baseUrl, String title, String codesSection) {
+    }
+    
+    public String pageUrl(Game game, WikiPage page) {
+        return settings.baseUrlFor(game, page.baseUrl()) + "/wiki/" + page.title();
+    }
+    
+    public List<CouponResponse> fetch(Game game, WikiPage page, long readTimeoutMillis, WikiTableExtractor table)
+            throws IOException {
+        String baseUrl = settings.baseUrlFor(game, page.baseUrl());
+        
+        String heading = settings.sectionFor(game, page.codesSection());
+        if (settings.modeFor(game) == CouponScraperProperties.Wiki.Mode.SECTION && heading != null && !heading.isBlank()) {
+            Optional<List<CouponResponse>> coupons = mediaWikiClient.fetchSection(baseUrl + "/api.php", page.title(),
+                    heading, readTimeoutMillis, table.parseScope(), table::extract);
+            if (coupons.isPresent()) {
+                return coupons.get();
+            }
+            logger.info("No \"{}\" section for {}, fetching the full page", heading, game.getDisplayName());
+        }
+        
+        return pageFetcher.fetchParsed(pageUrl(game, page), readTimeoutMillis, ContentRegion.MEDIAWIKI_ARTICLE,
+                table.parseScope(), table::extract);
+    }
+}
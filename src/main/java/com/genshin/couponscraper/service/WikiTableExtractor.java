@@ -0,0 +1,346 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.fetch.ParseScope;
+import com.genshin.couponscraper.model.CouponResponse;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Extracts coupons from the code tables of a fandom wiki page.
+ * <p>
+ * Each wiki source describes its table declaratively: which tables to read, how many
+ * header rows to skip, which column holds the code, reward, date, status and server,
+ * and which rows count as active. Selectors are compiled once when the extractor is
+ * built, and the cells of each row are collected into a buffer that is reused for the
+ * whole page, so the per-row work is limited to the column readers themselves.
+ * Instances are immutable and thread-safe.
+ */
+public final class WikiTableExtractor {
+    
+    /** Column index addressing the last cell of a row, however many cells it has. */
+    public static final int LAST_COLUMN = -1;
+    
+    private static final Logger logger = LoggerFactory.getLogger(WikiTableExtractor.class);
+    private static final Evaluator ROWS = QueryParser.parse("tbody tr");
+    
+    private final String source;
+    private final String tableSelector;
+    private final Evaluator tables;
+    private final boolean firstTableOnly;
+    private final String fallbackSelector;
+    private final Evaluator fallbackTables;
+    private final ParseScope parseScope;
+    private final int skipRows;
+    private final int minCells;
+    private final Column code;
+    private final Column reward;
+    private final Column date;
+    private final Column status;
+    private final Column server;
+    private final int activeColumn;
+    private final Predicate<String> active;
+    
+    private WikiTableExtractor(Builder builder) {
+        this.source = builder.source;
+        this.tableSelector = Objects.requireNonNull(builder.tableSelector, "tables");
+        this.tables = QueryParser.parse(tableSelector);
+        this.firstTableOnly = builder.firstTableOnly;
+        this.fallbackSelector = builder.fallbackSelector;
+        this.fallbackTables = fallbackSelector != null ? QueryParser.parse(fallbackSelector) : null;
+        this.parseScope = fallbackSelector != null
+                ? ParseScope.tables(tableSelector, fallbackSelector)
+                : ParseScope.tables(tableSelector);
+        this.skipRows = builder.skipRows;
+        this.minCells = builder.minCells;
+        this.code = Objects.requireNonNull(builder.code, "code");
+        this.reward = Objects.requireNonNull(builder.reward, "reward");
+        this.date = Objects.requireNonNull(builder.date, "date");
+        this.status = Objects.requireNonNull(builder.status, "status");
+        this.server = Objects.requireNonNull(builder.server, "server");
+        this.activeColumn = builder.activeColumn;
+        this.active = builder.active;
+    }
+    
+    /**
+     * @param source name of the wiki source, used in log messages
+     */
+    public static Builder builder(String source) {
+        return new Builder(source);
+    }
+    
+    /**
+     * The part of a page this extractor reads: its tables, including the fallback ones,
+     * so pages can be parsed without the navigation, ads and infoboxes around them.
+     */
+    public ParseScope parseScope() {
+        return parseScope;
+    }
+    
+    /**
+     * Reads the coupons of every matching row, in document order. Rows with fewer than
+     * the minimum number of cells, rows that are not active, and rows whose code or
+     * reward reader returns {@code null} are skipped.
+     */
+    public List<CouponResponse> extract(Document doc) {
+        List<CouponResponse> coupons = new ArrayList<>();
+        Row row = new Row();
+        
+        for (Element table : findTables(doc)) {
+            Elements rows = table.select(ROWS);
+            
+            for (int i = skipRows; i < rows.size(); i++) {
+                row.reset(rows.get(i));
+                if (row.size() < minCells) {
+                    continue;
+                }
+                
+                try {
+                    CouponResponse coupon = parseRow(row);
+                    if (coupon != null) {
+                        coupons.add(coupon);
+                        logger.debug("Parsed {} coupon: {}", source, coupon);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Error parsing {} coupon row: {}", source, e.getMessage());
+                }
+            }
+        }
+        
+        return coupons;
+    }
+    
+    private List<Element> findTables(Document doc) {
+        if (firstTableOnly) {
+            Element table = doc.selectFirst(tables);
+            if (table != null) {
+                return List.of(table);
+            }
+        } else {
+            Elements found = doc.select(tables);
+            if (!found.isEmpty()) {
+                return found;
+            }
+        }
+        
+        if (fallbackTables == null) {
+            return List.of();
+        }
+        logger.warn("No {} table matched {}, falling back to {}", source, tableSelector, fallbackSelector);
+        return doc.select(fallbackTables);
+    }
+    
+    private CouponResponse parseRow(Row row) {
+        if (active != null && !active.test(row.cell(activeColumn).text())) {
+            return null;
+        }
+        
+        String codeValue = code.read(row);
+        if (codeValue == null || codeValue.trim().isEmpty()) {
+            return null;
+        }
+        
+        String rewardValue = reward.read(row);
+        if (rewardValue == null) {
+            return null;
+        }
+        
+        return new CouponResponse(codeValue, rewardValue, date.read(row), status.read(row), server.read(row));
+    }
+    
+    /**
+     * Reads one field of a coupon from a table cell. Code and reward readers return
+     * {@code null} to reject the row.
+     */
+    @FunctionalInterface
+    public interface ColumnReader {
+        String read(Cell cell);
+    }
+    
+    /** A table cell whose text is computed at most once, however many readers use it. */
+    public static final class Cell {
+        
+        private Element element;
+        private String text;
+        
+        private Cell() {
+        }
+        
+        public Element element() {
+            return element;
+        }
+        
+        /** The cell's normalized, trimmed text, as {@link Element#text()}. */
+        public String text() {
+            if (text == null) {
+                text = element.text();
+            }
+            return text;
+        }
+        
+        private void reset(Element element) {
+            this.element = element;
+            this.text = null;
+        }
+    }
+    
+    private record Column(int index, ColumnReader reader) {
+        
+        String read(Row row) {
+            return reader.read(row.cell(index));
+        }
+    }
+    
+    /** The {@code td} cells of the current row; buffers are reused from row to row. */
+    private static final class Row {
+        
+        private final List<Cell> cells = new ArrayList<>();
+        private int size;
+        
+        void reset(Element row) {
+            size = 0;
+            // Same cells as row.select("td"), in document order, without building an Elements list
+            Node node = row.firstChild();
+            while (node != null) {
+                if (node instanceof Element element && "td".equals(element.normalName())) {
+                    add(element);
+                }
+                
+                Node child = node.firstChild();
+                if (child != null) {
+                    node = child;
+                    continue;
+                }
+                while (node != row && node.nextSibling() == null) {
+                    node = node.parentNode();
+                }
+                node = node == row ? null : node.nextSibling();
+            }
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        Cell cell(int index) {
+            int position = index < 0 ? size + index : index;
+            if (position < 0 || position >= size) {
+                throw new IndexOutOfBoundsException("Column " + index + " of a row with " + size + " cells");
+            }
+            return cells.get(position);
+        }
+        
+        private void add(Element element) {
+            if (size == cells.size()) {
+                cells.add(new Cell());
+            }
+            cells.get(size++).reset(element);
+        }
+    }
+    
+    public static class Builder {
+        
+        private final String source;
+        private String tableSelector;
+        private boolean firstTableOnly;
+        private String fallbackSelector;
+        private int skipRows;
+        private int minCells = 1;
+        private Column code;
+        private Column reward;
+        private Column date;
+        private Column status;
+        private Column server;
+        private int activeColumn;
+        private Predicate<String> active;
+        
+        private Builder(String source) {
+            this.source = source;
+        }
+        
+        /** Reads every table matching {@code selector}. */
+        public Builder tables(String selector) {
+            this.tableSelector = selector;
+            return this;
+        }
+        
+        /** Reads only the first table matching {@code selector}. */
+        public Builder firstTable(String selector) {
+            this.tableSelector = selector;
+            this.firstTableOnly = true;
+            return this;
+        }
+        
+        /** Reads every table matching {@code selector} when the primary selector matches none. */
+        public Builder fallbackTables(String selector) {
+            this.fallbackSelector = selector;
+            return this;
+        }
+        
+        /** Skips the first {@code rows} rows of each table, e.g. a header row without {@code th} cells. */
+        public Builder skipRows(int rows) {
+            this.skipRows = rows;
+            return this;
+        }
+        
+        public Builder minCells(int minCells) {
+            this.minCells = minCells;
+            return this;
+        }
+        
+        public Builder code(int column, ColumnReader reader) {
+            this.code = new Column(column, reader);
+            return this;
+        }
+        
+        public Builder reward(int column, ColumnReader reader) {
+            this.reward = new Column(column, reader);
+            return this;
+        }
+        
+        public Builder date(int column, ColumnReader reader) {
+            this.date = new Column(column, reader);
+            return this;
+        }
+        
+        public Builder status(int column, ColumnReader reader) {
+            this.status = new Column(column, reader);
+            return this;
+        }
+        
+        /** Uses the same status for every row, e.g. when the table only lists working codes. */
+        public Builder status(String status) {
+            return status(0, cell -> status);
+        }
+        
+        public Builder server(int column, ColumnReader reader) {
+            this.server = new Column(column, reader);
+            return this;
+        }
+        
+        public Builder server(String server) {
+            return server(0, cell -> server);
+        }
+        
+        /** Keeps only rows whose text in {@code column} satisfies {@code active}. */
+        public Builder activeWhen(int column, Predicate<String> active) {
+            this.activeColumn = column;
+            this.active = active;
+            return this;
+        }
+        
+        public WikiTableExtractor build() {
+            return new WikiTableExtractor(this);
+        }
+    }
+}
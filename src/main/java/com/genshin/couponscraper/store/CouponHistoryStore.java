@@ -0,0 +1,337 @@
+package com.genshin.couponscraper.store;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.service.SnapshotUpdatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which codes each game had over time, so past code sets can be queried
+ * without scraping again.
+ * <p>
+ * Every scrape whose code set differs from the previous one appends a record to the
+ * game's {@link RecordLog}, {@code <slug>.history} under {@code coupon.history.directory}.
+ * Codes are dictionary-encoded: a code is written out once, in the record where it
+ * first appears, and referred to by its id afterwards. A record holds the varint
+ * delta of its time to the previous record's, the new dictionary entries, and the ids
+ * added and removed since the previous record, each list as ascending varint deltas.
+ * <p>
+ * The log is replayed into memory on startup. Every {@value #CHECKPOINT_INTERVAL}
+ * changes the full code set is kept as a checkpoint, so the set at any time is the
+ * nearest earlier checkpoint plus fewer than {@value #CHECKPOINT_INTERVAL} changes,
+ * found by binary search over the change times.
+ */
+@Component
+public class CouponHistoryStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CouponHistoryStore.class);
+    
+    static final int CHECKPOINT_INTERVAL = 32;
+    private static final String SUFFIX = ".history";
+    
+    private final boolean enabled;
+    private final Map<Game, GameHistory> histories = new EnumMap<>(Game.class);
+    
+    public CouponHistoryStore(CouponScraperProperties properties) {
+        CouponScraperProperties.History settings = properties.getHistory();
+        this.enabled = settings.isEnabled();
+        Path directory = Paths.get(settings.getDirectory());
+        
+        long start = System.nanoTime();
+        for (Game game : Game.values()) {
+            GameHistory history = new GameHistory(new RecordLog(directory.resolve(game.getSlug() + SUFFIX)));
+            if (enabled) {
+                try {
+                    history.load();
+                } catch (IOException e) {
+                    logger.warn("Could not load {} code history: {}", game.getDisplayName(), e.getMessage());
+                }
+            }
+            histories.put(game, history);
+        }
+        if (enabled) {
+            logger.info("Loaded code history from {} in {} ms", directory, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+    
+    @EventListener
+    public void onSnapshotUpdated(SnapshotUpdatedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Set<String> codes = new LinkedHashSet<>();
+        for (CouponResponse coupon : event.snapshot().getCoupons()) {
+            if (coupon.getCode() != null) {
+                codes.add(coupon.getCode());
+            }
+        }
+        try {
+            histories.get(event.game()).record(event.snapshot().getFetchedAt().toEpochMilli(), codes);
+        } catch (IOException e) {
+            logger.warn("Could not record {} code history: {}", event.game().getDisplayName(), e.getMessage());
+        }
+    }
+    
+    /**
+     * The codes the game had at {@code at}, in the order they were first seen; empty
+     * before the first recorded scrape.
+     */
+    public List<String> activeAt(Game game, Instant at) {
+        GameHistory history = histories.get(game);
+        synchronized (history) {
+            return history.codes(history.activeAt(at.toEpochMilli()));
+        }
+    }
+    
+    /**
+     * Codes present at {@code to} but not at {@code from}, and the other way around.
+     */
+    public Changes changesBetween(Game game, Instant from, Instant to) {
+        GameHistory history = histories.get(game);
+        synchronized (history) {
+            BitSet before = history.activeAt(from.toEpochMilli());
+            BitSet after = history.activeAt(to.toEpochMilli());
+            BitSet added = (BitSet) after.clone();
+            added.andNot(before);
+            before.andNot(after);
+            return new Changes(history.codes(added), history.codes(before));
+        }
+    }
+    
+    public record Changes(List<String> added, List<String> removed) {
+    }
+    
+    /**
+     * Recorded changes, distinct codes, checkpoints and log bytes, per game.
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        histories.forEach((game, history) -> {
+            synchronized (history) {
+                Map<String, Long> gameStats = new LinkedHashMap<>();
+                gameStats.put("changes", (long) history.changes);
+                gameStats.put("codes", (long) history.dictionary.size());
+                gameStats.put("checkpoints", (long) history.checkpoints.size());
+                gameStats.put("bytes", history.bytes);
+                stats.put(game.getSlug(), gameStats);
+            }
+        });
+        return stats;
+    }
+    
+    private static final class GameHistory {
+        
+        final RecordLog log;
+        final List<String> dictionary = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<int[]> added = new ArrayList<>();
+        final List<int[]> removed = new ArrayList<>();
+        // checkpoints.get(k) is the code set before change k * CHECKPOINT_INTERVAL
+        final List<BitSet> checkpoints = new ArrayList<>(List.of(new BitSet()));
+        final BitSet active = new BitSet();
+        long[] times = new long[16];
+        int changes;
+        long lastTime;
+        long bytes;
+        
+        GameHistory(RecordLog log) {
+            this.log = log;
+        }
+        
+        synchronized void load() throws IOException {
+            long intact = 0;
+            for (byte[] record : log.read()) {
+                try {
+                    decode(record);
+                } catch (IOException e) {
+                    log.truncate(intact);
+                    break;
+                }
+                intact += RecordLog.framedLength(record.length);
+            }
+            bytes = intact;
+        }
+        
+        synchronized void record(long time, Set<String> codes) throws IOException {
+            List<String> newCodes = new ArrayList<>();
+            BitSet next = new BitSet();
+            for (String code : codes) {
+                Integer id = ids.get(code);
+                if (id == null) {
+                    id = dictionary.size() + newCodes.size();
+                    newCodes.add(code);
+                }
+                next.set(id);
+            }
+            
+            BitSet add = (BitSet) next.clone();
+            add.andNot(active);
+            BitSet remove = (BitSet) active.clone();
+            remove.andNot(next);
+            if (add.isEmpty() && remove.isEmpty()) {
+                return;
+            }
+            
+            long recordTime = Math.max(time, lastTime);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeVarLong(out, recordTime - lastTime);
+            writeVarLong(out, newCodes.size());
+            for (String code : newCodes) {
+                byte[] utf8 = code.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(out, utf8.length);
+                out.write(utf8);
+            }
+            writeIds(out, add.stream().toArray());
+            writeIds(out, remove.stream().toArray());
+            
+            byte[] record = out.toByteArray();
+            bytes = log.append(record);
+            decode(record);
+        }
+        
+        BitSet activeAt(long time) {
+            // Number of changes at or before time
+            int n = Arrays.binarySearch(times, 0, changes, time);
+            if (n >= 0) {
+                while (n + 1 < changes && times[n + 1] == time) {
+                    n++;
+                }
+                n++;
+            } else {
+                n = -n - 1;
+            }
+            
+            int checkpoint = Math.min(n / CHECKPOINT_INTERVAL, checkpoints.size() - 1);
+            BitSet set = (BitSet) checkpoints.get(checkpoint).clone();
+            for (int i = checkpoint * CHECKPOINT_INTERVAL; i < n; i++) {
+                apply(set, i);
+            }
+            return set;
+        }
+        
+        List<String> codes(BitSet set) {
+            List<String> codes = new ArrayList<>(set.cardinality());
+            set.stream().forEach(id -> codes.add(dictionary.get(id)));
+            return codes;
+        }
+        
+        private void decode(byte[] record) throws IOException {
+            InputStream in = new ByteArrayInputStream(record);
+            long time = lastTime + readVarLong(in);
+            int newCodes = (int) readVarLong(in);
+            List<String> entries = new ArrayList<>(newCodes);
+            for (int i = 0; i < newCodes; i++) {
+                int length = (int) readVarLong(in);
+                byte[] utf8 = in.readNBytes(length);
+                if (utf8.length != length) {
+                    throw new EOFException();
+                }
+                entries.add(new String(utf8, StandardCharsets.UTF_8));
+            }
+            int[] add = readIds(in);
+            int[] remove = readIds(in);
+            int dictionarySize = dictionary.size() + entries.size();
+            for (int id : add) {
+                if (id >= dictionarySize) {
+                    throw new IOException("Unknown code id " + id);
+                }
+            }
+            
+            for (String code : entries) {
+                ids.put(code, dictionary.size());
+                dictionary.add(code);
+            }
+            if (changes > 0 && changes % CHECKPOINT_INTERVAL == 0) {
+                checkpoints.add((BitSet) active.clone());
+            }
+            if (changes == times.length) {
+                times = Arrays.copyOf(times, changes * 2);
+            }
+            times[changes] = time;
+            added.add(add);
+            removed.add(remove);
+            apply(active, changes);
+            changes++;
+            lastTime = time;
+        }
+        
+        private void apply(BitSet set, int change) {
+            for (int id : added.get(change)) {
+                set.set(id);
+            }
+            for (int id : removed.get(change)) {
+                set.clear(id);
+            }
+        }
+    }
+    
+    private static void writeIds(ByteArrayOutputStream out, int[] ascending) {
+        writeVarLong(out, ascending.length);
+        int previous = 0;
+        for (int id : ascending) {
+            writeVarLong(out, id - previous);
+            previous = id;
+        }
+    }
+    
+    private static int[] readIds(InputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count > in.available()) {
+            throw new EOFException();
+        }
+        int[] ids = new int[(int) count];
+        int previous = 0;
+        for (int i = 0; i < ids.length; i++) {
+            previous += (int) readVarLong(in);
+            ids[i] = previous;
+        }
+        return ids;
+    }
+    
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
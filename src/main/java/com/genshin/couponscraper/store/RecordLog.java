@@ -0,0 +1,139 @@
+package com.genshin.couponscraper.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of records, each framed by its length and a CRC32 of its bytes.
+ * <p>
+ * A record goes to disk in one append followed by an fsync, so a crash can at worst
+ * leave a torn record at the end; {@link #read()} stops at the first record that is
+ * cut short or fails its checksum and truncates the file there. {@link #replace}
+ * rewrites the whole file through a temporary file that atomically takes its place.
+ * Not thread-safe; callers serialize access per file.
+ */
+final class RecordLog {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RecordLog.class);
+    
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+    
+    private final Path file;
+    
+    RecordLog(Path file) {
+        this.file = file;
+    }
+    
+    Path file() {
+        return file;
+    }
+    
+    /**
+     * The intact records in append order; empty when the file does not exist.
+     */
+    List<byte[]> read() throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return records;
+        }
+        
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+        int intact = 0;
+        while (log.remaining() >= HEADER_BYTES) {
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || length > log.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            log.get(payload);
+            if (checksum != crc(payload)) {
+                break;
+            }
+            records.add(payload);
+            intact = log.position();
+        }
+        
+        if (intact < log.limit()) {
+            truncate(intact);
+        }
+        return records;
+    }
+    
+    /**
+     * Cuts the file back to its first {@code length} bytes, e.g. to drop records a
+     * reader could not decode.
+     */
+    void truncate(long length) throws IOException {
+        logger.warn("Discarding {} corrupt trailing bytes of {}", Files.size(file) - length, file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+            channel.force(true);
+        }
+    }
+    
+    /**
+     * Appends one record and returns the size of the file afterwards.
+     */
+    long append(byte[] payload) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            write(channel, payload);
+            channel.force(false);
+            return channel.size();
+        }
+    }
+    
+    /**
+     * Atomically replaces the file with one holding just {@code payloads}.
+     */
+    void replace(List<byte[]> payloads) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte[] payload : payloads) {
+                write(channel, payload);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /** The number of file bytes taken by a record of {@code payloadLength} bytes. */
+    static int framedLength(int payloadLength) {
+        return HEADER_BYTES + payloadLength;
+    }
+    
+    private static void write(FileChannel channel, byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+    
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,212 @@
+package com.genshin.couponscraper.store;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.service.SnapshotUpdatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the latest snapshot of every game on disk, so after a restart coupons are
+ * served from the previous run until the first scrape completes.
+ * <p>
+ * Each game has an append-only {@link RecordLog}, {@code <slug>.snapshots} under
+ * {@code coupon.store.directory}, so a crash can at worst leave a torn record at the
+ * end, which loading cuts off. A scrape that changed the coupons appends the full
+ * list; one that did not only appends its fetch time. A log larger than
+ * {@code coupon.store.compact-after} is atomically replaced by a single record.
+ */
+@Component
+public class SnapshotStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+    
+    private static final String SUFFIX = ".snapshots";
+    private static final byte FULL = 1;
+    private static final byte FETCHED = 2;
+    
+    private final boolean enabled;
+    private final Path directory;
+    private final long compactAfterBytes;
+    
+    // ETag of the coupons in each log's last full record; a scrape with the same ETag only appends its time
+    private final Map<Game, String> persistedETags = new ConcurrentHashMap<>();
+    
+    public SnapshotStore(CouponScraperProperties properties) {
+        CouponScraperProperties.Store settings = properties.getStore();
+        this.enabled = settings.isEnabled();
+        this.directory = Paths.get(settings.getDirectory());
+        this.compactAfterBytes = settings.getCompactAfter().toBytes();
+    }
+    
+    /**
+     * The latest stored snapshot of every game that has one.
+     */
+    public Map<Game, CouponSnapshot> loadAll() {
+        Map<Game, CouponSnapshot> loaded = new EnumMap<>(Game.class);
+        if (!enabled) {
+            return loaded;
+        }
+        
+        long start = System.nanoTime();
+        for (Game game : Game.values()) {
+            try {
+                load(game).ifPresent(snapshot -> loaded.put(game, snapshot));
+            } catch (IOException e) {
+                logger.warn("Could not load stored {} snapshot: {}", game.getDisplayName(), e.getMessage());
+            }
+        }
+        logger.info("Loaded {} stored snapshots from {} in {} ms", loaded.size(), directory,
+                (System.nanoTime() - start) / 1_000_000);
+        return loaded;
+    }
+    
+    /**
+     * The latest snapshot in the game's log. A torn or corrupt tail is cut off so
+     * later appends follow the last intact record.
+     */
+    public synchronized Optional<CouponSnapshot> load(Game game) throws IOException {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        
+        RecordLog log = log(game);
+        List<CouponResponse> coupons = null;
+        Instant fetchedAt = null;
+        long intact = 0;
+        
+        for (byte[] record : log.read()) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+                byte type = in.readByte();
+                Instant recordTime = Instant.ofEpochMilli(in.readLong());
+                if (type == FULL) {
+                    coupons = readCoupons(in);
+                } else if (type != FETCHED || coupons == null) {
+                    log.truncate(intact);
+                    break;
+                }
+                fetchedAt = recordTime;
+            } catch (IOException e) {
+                log.truncate(intact);
+                break;
+            }
+            intact += RecordLog.framedLength(record.length);
+        }
+        if (coupons == null) {
+            return Optional.empty();
+        }
+        
+        CouponSnapshot snapshot = new CouponSnapshot(game, coupons, fetchedAt);
+        persistedETags.put(game, snapshot.getETag());
+        return Optional.of(snapshot);
+    }
+    
+    @EventListener
+    public void onSnapshotUpdated(SnapshotUpdatedEvent event) {
+        try {
+            save(event.snapshot());
+        } catch (IOException e) {
+            logger.warn("Could not store {} snapshot: {}", event.game().getDisplayName(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Appends {@code snapshot} to its game's log, compacting the log when it has grown
+     * past the configured size.
+     */
+    public synchronized void save(CouponSnapshot snapshot) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        
+        Game game = snapshot.getGame();
+        boolean unchanged = snapshot.getETag().equals(persistedETags.get(game));
+        RecordLog log = log(game);
+        long size = log.append(record(snapshot, !unchanged));
+        persistedETags.put(game, snapshot.getETag());
+        
+        if (size > compactAfterBytes) {
+            log.replace(List.of(record(snapshot, true)));
+            logger.debug("Compacted {} to {} bytes", log.file(), Files.size(log.file()));
+        }
+    }
+    
+    private RecordLog log(Game game) {
+        return new RecordLog(directory.resolve(game.getSlug() + SUFFIX));
+    }
+    
+    private static byte[] record(CouponSnapshot snapshot, boolean full) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(full ? FULL : FETCHED);
+            out.writeLong(snapshot.getFetchedAt().toEpochMilli());
+            if (full) {
+                writeCoupons(out, snapshot.getCoupons());
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static void writeCoupons(DataOutputStream out, List<CouponResponse> coupons) throws IOException {
+        out.writeInt(coupons.size());
+        for (CouponResponse coupon : coupons) {
+            writeString(out, coupon.getCode());
+            writeString(out, coupon.getReward());
+            writeString(out, coupon.getDate());
+            writeString(out, coupon.getStatus());
+            writeString(out, coupon.getServer());
+            writeString(out, coupon.getRaw());
+        }
+    }
+    
+    private static List<CouponResponse> readCoupons(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<CouponResponse> coupons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CouponResponse coupon = new CouponResponse(readString(in), readString(in), readString(in),
+                    readString(in), readString(in));
+            coupon.setRaw(readString(in));
+            coupons.add(coupon);
+        }
+        return coupons;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
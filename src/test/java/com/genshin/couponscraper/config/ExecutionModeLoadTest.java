@@ -0,0 +1,131 @@
+package com.genshin.couponscraper.config;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares how many concurrent requests against a slow upstream each execution mode
+ * keeps in flight. The platform mode is sized like Tomcat's default 200 worker threads.
+ * <p>
+ * Only the executors are measured, not the app: requests bypass Tomcat and
+ * {@code PageFetcher}, whose connection pool caps concurrent fetches in either mode.
+ * A benchmark, run with {@code mvn test -Pbenchmark}; it reports and does not assert
+ * on timing.
+ */
+@Tag("benchmark")
+class ExecutionModeLoadTest {
+    
+    private static final int REQUESTS = 1000;
+    private static final int PLATFORM_THREADS = 200;
+    private static final long UPSTREAM_DELAY_MS = 300;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private HttpServer slowUpstream;
+    private URI upstreamUri;
+    
+    @BeforeEach
+    void startSlowUpstream() throws Exception {
+        slowUpstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), REQUESTS);
+        slowUpstream.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        slowUpstream.createContext("/wiki/Codes", exchange -> {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(UPSTREAM_DELAY_MS);
+                byte[] body = "<table class=\"wikitable\"></table>".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        slowUpstream.start();
+        upstreamUri = URI.create("http://127.0.0.1:" + slowUpstream.getAddress().getPort() + "/wiki/Codes");
+    }
+    
+    @AfterEach
+    void stopSlowUpstream() {
+        slowUpstream.stop(0);
+    }
+    
+    @Test
+    void compareConcurrencyAgainstSlowUpstream() throws Exception {
+        LoadResult platform = runLoad(Executors.newFixedThreadPool(PLATFORM_THREADS,
+                ScraperExecutorConfig.namedDaemonThreads("load-platform-")));
+        LoadResult virtual = runLoad(Executors.newThreadPerTaskExecutor(
+                ScraperExecutorConfig.virtualThreads("load-virtual-")));
+        
+        System.out.println("=== " + REQUESTS + " requests, upstream latency " + UPSTREAM_DELAY_MS + " ms ===");
+        System.out.println("Platform pool (" + PLATFORM_THREADS + " threads): " + platform);
+        System.out.println("Virtual threads:                " + virtual);
+        
+        assertEquals(REQUESTS, platform.completed);
+        assertEquals(REQUESTS, virtual.completed);
+    }
+    
+    private LoadResult runLoad(ExecutorService executor) throws Exception {
+        peakInFlight.set(0);
+        long start = System.nanoTime();
+        List<Future<Integer>> responses = new ArrayList<>(REQUESTS);
+        
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                responses.add(executor.submit(this::fetchUpstream));
+            }
+            int completed = 0;
+            for (Future<Integer> response : responses) {
+                if (response.get(60, TimeUnit.SECONDS) == 200) {
+                    completed++;
+                }
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return new LoadResult(completed, peakInFlight.get(), elapsedMs);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private int fetchUpstream() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) upstreamUri.toURL().openConnection();
+        connection.setConnectTimeout(10000);
+        connection.setReadTimeout(30000);
+        try (InputStream in = connection.getInputStream()) {
+            in.readAllBytes();
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+    
+    private record LoadResult(int completed, int peakConcurrent, long elapsedMs) {
+        
+        @Override
+        public String toString() {
+            return String.format("completed=%d, peak concurrent upstream requests=%d, wall time=%d ms, throughput=%.0f req/s",
+                    completed, peakConcurrent, elapsedMs, completed * 1000.0 / Math.max(1, elapsedMs));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.genshin.couponscraper.controller;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.fetch.PageFetcher;
+import com.genshin.couponscraper.fetch.WebClientPool;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.service.CouponAggregationService;
+import com.genshin.couponscraper.service.CouponCacheService;
+import com.genshin.couponscraper.service.CouponChangeFeed;
+import com.genshin.couponscraper.service.CouponResponseEncoder;
+import com.genshin.couponscraper.service.FCMobileScraperService;
+import com.genshin.couponscraper.service.RetryExecutor;
+import com.genshin.couponscraper.service.SnapshotUpdatedEvent;
+import com.genshin.couponscraper.service.SnapshotWatcher;
+import com.genshin.couponscraper.store.CouponHistoryStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(CouponController.class)
+@EnableConfigurationProperties(CouponScraperProperties.class)
+@Import({CouponResponseEncoder.class, SnapshotWatcher.class})
+class CouponControllerCachingTest {
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private SnapshotWatcher snapshotWatcher;
+    
+    @MockBean
+    private CouponCacheService couponCacheService;
+    
+    @MockBean
+    private CouponAggregationService couponAggregationService;
+    
+    @MockBean
+    private PageFetcher pageFetcher;
+    
+    @MockBean
+    private WebClientPool webClientPool;
+    
+    @MockBean
+    private FCMobileScraperService fcMobileScraperService;
+    
+    @MockBean
+    private RetryExecutor retryExecutor;
+    
+    @MockBean
+    private CouponHistoryStore couponHistoryStore;
+    
+    @MockBean
+    private CouponChangeFeed couponChangeFeed;
+    
+    private CouponSnapshot snapshot;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        snapshot = new CouponSnapshot(Game.GENSHIN, List.of(
+                new CouponResponse("GENSHINGIFT", "50 Primogem", "10th November", "Active", "Global")),
+                Instant.now());
+        when(couponCacheService.getSnapshot(Game.GENSHIN)).thenReturn(snapshot);
+        when(couponCacheService.peekSnapshot(Game.GENSHIN)).thenReturn(Optional.of(snapshot));
+    }
+    
+    @Test
+    void returnsETagAndCacheControl() throws Exception {
+        mockMvc.perform(get("/craw/genshin"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", snapshot.getETag()))
+                .andExpect(header().string("Cache-Control", "max-age=30, public"))
+                .andExpect(jsonPath("$[0].code").value("GENSHINGIFT"));
+    }
+    
+    @Test
+    void matchingIfNoneMatchGetsBodylessNotModified() throws Exception {
+        MvcResult result = mockMvc.perform(get("/craw/genshin").header("If-None-Match", snapshot.getETag()))
+                .andExpect(status().isNotModified())
+                .andReturn();
+        
+        assertEquals(0, result.getResponse().getContentLength());
+        assertEquals("", result.getResponse().getContentAsString());
+    }
+    
+    @Test
+    void servesPrecompressedGzipWhenAccepted() throws Exception {
+        MvcResult plain = mockMvc.perform(get("/craw/genshin")).andReturn();
+        MvcResult gzipped = mockMvc.perform(get("/craw/genshin").header("Accept-Encoding", "br;q=1.0, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().stringValues("Vary", hasItem("Accept-Encoding")))
+                .andReturn();
+        
+        byte[] decompressed;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray()))) {
+            decompressed = in.readAllBytes();
+        }
+        assertEquals(plain.getResponse().getContentAsString(), new String(decompressed, StandardCharsets.UTF_8));
+        assertNotEquals(plain.getResponse().getHeader("ETag"), gzipped.getResponse().getHeader("ETag"));
+    }
+    
+    @Test
+    void eTagOnlyChangesWithContent() {
+        CouponSnapshot sameContent = new CouponSnapshot(Game.GENSHIN, snapshot.getCoupons(), Instant.now().plusSeconds(60));
+        CouponSnapshot newCode = new CouponSnapshot(Game.GENSHIN, List.of(
+                new CouponResponse("NEWCODE2025", "60 Primogem", "1st December", "Active", "Global")), Instant.now());
+        
+        assertEquals(snapshot.getETag(), sameContent.getETag());
+        assertNotEquals(snapshot.getETag(), newCode.getETag());
+    }
+    
+    @Test
+    void longPollWithAnOutdatedVersionIsAnsweredAtOnce() throws Exception {
+        MvcResult result = mockMvc.perform(get("/craw/genshin").param("wait", "30s").param("version", "outdated"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", snapshot.getETag()))
+                .andExpect(jsonPath("$[0].code").value("GENSHINGIFT"));
+    }
+    
+    @Test
+    void longPollIsHeldUntilTheCouponsChange() throws Exception {
+        MvcResult result = mockMvc.perform(get("/craw/genshin").param("wait", "30s")
+                        .header("If-None-Match", snapshot.getETag()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        CouponSnapshot sameContent = new CouponSnapshot(Game.GENSHIN, snapshot.getCoupons(), Instant.now());
+        snapshotWatcher.onSnapshotUpdated(new SnapshotUpdatedEvent(snapshot, sameContent));
+        assertEquals(1L, snapshotWatcher.getStats().get("waiting"), "a refresh without changes does not answer it");
+        
+        CouponSnapshot changed = new CouponSnapshot(Game.GENSHIN, List.of(
+                new CouponResponse("NEWCODE2025", "60 Primogem", "1st December", "Active", "Global")), Instant.now());
+        snapshotWatcher.onSnapshotUpdated(new SnapshotUpdatedEvent(sameContent, changed));
+        
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", changed.getETag()))
+                .andExpect(jsonPath("$[0].code").value("NEWCODE2025"));
+        assertEquals(0L, snapshotWatcher.getStats().get("waiting"));
+    }
+    
+    @Test
+    void longPollCatchesAChangeStoredWhileItRegisters() throws Exception {
+        CouponSnapshot read = new CouponSnapshot(Game.HONKAI_STAR_RAIL, List.of(
+                new CouponResponse("STARRAILGIFT", "50 Stellar Jade", "10th November", "Active", "Global")),
+                Instant.now());
+        CouponSnapshot stored = new CouponSnapshot(Game.HONKAI_STAR_RAIL, List.of(
+                new CouponResponse("NEWRAIL2025", "60 Stellar Jade", "1st December", "Active", "Global")),
+                Instant.now());
+        // The refresh stored its snapshot after the handler read one, its event is still to come
+        when(couponCacheService.getSnapshot(Game.HONKAI_STAR_RAIL)).thenReturn(read);
+        when(couponCacheService.peekSnapshot(Game.HONKAI_STAR_RAIL)).thenReturn(Optional.of(stored));
+        
+        MvcResult result = mockMvc.perform(get("/craw/honkai-star-rail").param("wait", "30s")
+                        .param("version", read.getETag()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", stored.getETag()))
+                .andExpect(jsonPath("$[0].code").value("NEWRAIL2025"));
+        assertEquals(0L, snapshotWatcher.getStats().get("waiting"));
+    }
+    
+    @Test
+    void longPollWithoutAChangeEndsInNotModified() throws Exception {
+        MvcResult result = mockMvc.perform(get("/craw/genshin").param("wait", "1s").param("version", snapshot.getETag()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", snapshot.getETag()));
+        
+        mockMvc.perform(get("/craw/genshin").param("wait", "soon").param("version", snapshot.getETag()))
+                .andExpect(request().asyncStarted());
+    }
+}
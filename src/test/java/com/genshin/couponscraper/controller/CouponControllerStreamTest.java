@@ -0,0 +1,214 @@
+package com.genshin.couponscraper.controller;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.fetch.PageFetcher;
+import com.genshin.couponscraper.fetch.WebClientPool;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.service.CouponAggregationService;
+import com.genshin.couponscraper.service.CouponCacheService;
+import com.genshin.couponscraper.service.CouponChangeFeed;
+import com.genshin.couponscraper.service.CouponResponseEncoder;
+import com.genshin.couponscraper.service.FCMobileScraperService;
+import com.genshin.couponscraper.service.RetryExecutor;
+import com.genshin.couponscraper.service.SnapshotUpdatedEvent;
+import com.genshin.couponscraper.service.SnapshotWatcher;
+import com.genshin.couponscraper.store.CouponHistoryStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(CouponController.class)
+@EnableConfigurationProperties(CouponScraperProperties.class)
+@Import({CouponChangeFeed.class, CouponControllerStreamTest.StreamExecutorConfig.class})
+class CouponControllerStreamTest {
+    
+    private static final Instant START = Instant.parse("2025-10-16T08:00:00Z");
+    
+    @TestConfiguration
+    static class StreamExecutorConfig {
+        
+        @Bean(destroyMethod = "shutdownNow")
+        ScheduledExecutorService streamExecutor() {
+            return Executors.newSingleThreadScheduledExecutor();
+        }
+        
+        @Bean(destroyMethod = "shutdownNow")
+        ExecutorService streamDeliveryExecutor() {
+            return Executors.newCachedThreadPool();
+        }
+    }
+    
+    @Autowired
+    private MockMvc mockMvc;
+    
+    @Autowired
+    private CouponChangeFeed couponChangeFeed;
+    
+    @MockBean
+    private CouponCacheService couponCacheService;
+    
+    @MockBean
+    private CouponAggregationService couponAggregationService;
+    
+    @MockBean
+    private PageFetcher pageFetcher;
+    
+    @MockBean
+    private WebClientPool webClientPool;
+    
+    @MockBean
+    private FCMobileScraperService fcMobileScraperService;
+    
+    @MockBean
+    private CouponResponseEncoder couponResponseEncoder;
+    
+    @MockBean
+    private RetryExecutor retryExecutor;
+    
+    @MockBean
+    private CouponHistoryStore couponHistoryStore;
+    
+    @MockBean
+    private SnapshotWatcher snapshotWatcher;
+    
+    private static CouponSnapshot snapshot(Game game, Instant fetchedAt, String... codes) {
+        List<CouponResponse> coupons = new ArrayList<>();
+        for (String code : codes) {
+            coupons.add(new CouponResponse(code, "Primogem ×60", "1st January", "Active", null));
+        }
+        return new CouponSnapshot(game, coupons, fetchedAt);
+    }
+    
+    private void refresh(CouponSnapshot previous, CouponSnapshot snapshot) {
+        couponChangeFeed.onSnapshotUpdated(new SnapshotUpdatedEvent(previous, snapshot));
+    }
+    
+    private static String awaitContent(MvcResult result, String expected) throws Exception {
+        MockHttpServletResponse response = result.getResponse();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!response.getContentAsString().contains(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        String content = response.getContentAsString();
+        assertTrue(content.contains(expected), "stream so far: " + content);
+        return content;
+    }
+    
+    private static List<String> eventIds(String content) {
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = Pattern.compile("(?m)^id:(\\d+)$").matcher(content);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+    
+    @Test
+    void pushesOnlyAddedAndRemovedCodesOfTheSubscribedGame() throws Exception {
+        MvcResult result = mockMvc.perform(get("/craw/stream").param("game", "genshin"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitContent(result, ":subscribed");
+        
+        CouponSnapshot first = snapshot(Game.GENSHIN, START, "ALPHA", "BETA");
+        refresh(null, first);
+        CouponSnapshot touched = snapshot(Game.GENSHIN, START.plusSeconds(60), "ALPHA", "BETA");
+        refresh(first, touched);
+        refresh(snapshot(Game.HONKAI_STAR_RAIL, START, "STARRAIL"), snapshot(Game.HONKAI_STAR_RAIL, START, "EXPRESS"));
+        refresh(touched, snapshot(Game.GENSHIN, START.plusSeconds(120), "BETA", "GAMMA"));
+        
+        String content = awaitContent(result, "GAMMA");
+        
+        assertEquals("text/event-stream", result.getResponse().getContentType());
+        assertTrue(content.contains("event:change\ndata:{\"game\":\"genshin\",\"added\":[\"GAMMA\"],\"removed\":[\"ALPHA\"]"),
+                content);
+        assertFalse(content.contains("EXPRESS"), "another game's change");
+        assertEquals(1, eventIds(content).size(), "neither the first nor an unchanged snapshot is a change");
+        
+        mockMvc.perform(get("/craw/stream").param("game", "not-a-game"))
+                .andExpect(status().isNotFound());
+    }
+    
+    @Test
+    void resumesFromLastEventIdAndResetsWhenItIsNoLongerBuffered() throws Exception {
+        MvcResult live = mockMvc.perform(get("/craw/stream")).andReturn();
+        awaitContent(live, ":subscribed");
+        CouponSnapshot previous = snapshot(Game.BLOX_FRUITS, START, "CODE0");
+        for (int i = 1; i <= 3; i++) {
+            CouponSnapshot next = snapshot(Game.BLOX_FRUITS, START.plusSeconds(i), "CODE" + i);
+            refresh(previous, next);
+            previous = next;
+        }
+        List<String> ids = eventIds(awaitContent(live, "CODE3"));
+        assertEquals(3, ids.size());
+        
+        MvcResult resumed = mockMvc.perform(get("/craw/stream").header("Last-Event-ID", ids.get(0))).andReturn();
+        String replayed = awaitContent(resumed, "CODE3");
+        assertEquals(ids.subList(1, 3), eventIds(replayed));
+        assertFalse(replayed.contains("\"added\":[\"CODE1\"]"));
+        
+        MvcResult reset = mockMvc.perform(get("/craw/stream").header("Last-Event-ID", "42")).andReturn();
+        String content = awaitContent(reset, "event:reset");
+        assertEquals(List.of(ids.get(2)), eventIds(content), "a reset moves the client to the latest id");
+        assertEquals(1L, couponChangeFeed.getStats().get("resets"));
+    }
+    
+    @Test
+    void capsSubscribersBeforeTheyAreRegistered() throws Exception {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getStream().setMaxSubscribers(3);
+        ScheduledExecutorService busy = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService delivery = Executors.newCachedThreadPool();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            busy.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            CouponChangeFeed feed = new CouponChangeFeed(new ObjectMapper(), busy, delivery, properties);
+            
+            long accepted = 0;
+            for (int i = 0; i < 10; i++) {
+                if (feed.subscribe(Game.GENSHIN, null).isPresent()) {
+                    accepted++;
+                }
+            }
+            
+            assertEquals(3, accepted, "a burst is capped while no subscription has been registered yet");
+            assertEquals(7L, feed.getStats().get("rejected"));
+            assertEquals(3L, feed.getStats().get("subscribers"));
+        } finally {
+            release.countDown();
+            busy.shutdownNow();
+            delivery.shutdownNow();
+        }
+    }
+}
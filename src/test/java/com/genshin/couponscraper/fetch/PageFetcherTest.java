@@ -0,0 +1,280 @@
+package com.genshin.couponscraper.fetch;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageFetcherTest {
+    
+    private static final String PAGE = "<html><body><table class=\"wikitable\"><tr><td>GENSHINGIFT</td></tr></table></body></html>";
+    
+    private final List<String> ifNoneMatchHeaders = new CopyOnWriteArrayList<>();
+    private final List<String> acceptEncodingHeaders = new CopyOnWriteArrayList<>();
+    private final AtomicInteger renders = new AtomicInteger();
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger held = new AtomicInteger();
+    private final AtomicInteger peakHeld = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private PageFetcher pageFetcher;
+    private String baseUrl;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/wiki/Promotional_Code", this::serveWithEtag);
+        server.createContext("/api.php", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            send(exchange, 200, "{}");
+        });
+        server.createContext("/slow", exchange -> {
+            sleep(Duration.ofSeconds(3));
+            send(exchange, 200, "late");
+        });
+        server.createContext("/held", exchange -> {
+            peakHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                held.decrementAndGet();
+            }
+            send(exchange, 200, "released");
+        });
+        server.createContext("/fcmobile-redeem-codes", exchange -> send(exchange, 200,
+                "<html><head><script>var nonce=" + renders.incrementAndGet() + "</script></head>"
+                        + "<body><main><p>15th October FCMOBILE2025 COPY</p></main></body></html>"));
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        pageFetcher = new PageFetcher(new CouponScraperProperties());
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        pageFetcher.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+    
+    @Test
+    void requestsAndDecodesGzip() throws IOException {
+        FetchedPage page = pageFetcher.fetch(baseUrl + "/wiki/Promotional_Code", 5000);
+        
+        assertEquals(PAGE, page.getBody());
+        assertTrue(acceptEncodingHeaders.get(0).contains("gzip"));
+    }
+    
+    @Test
+    void reusesKeptAliveConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("{}", pageFetcher.fetch(baseUrl + "/api.php", 5000).getBody());
+        }
+        
+        assertEquals(5, clientPorts.size());
+        assertEquals(1, clientPorts.stream().distinct().count(), "connections used: " + clientPorts);
+    }
+    
+    @Test
+    void failsWhenResponseIsSlowerThanPerRequestTimeout() throws IOException {
+        long start = System.nanoTime();
+        
+        assertThrows(SocketTimeoutException.class, () -> pageFetcher.fetch(baseUrl + "/slow", 200));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3), "gave up only after the response");
+        // The timeout is per request; the configured default still applies to the next one
+        assertEquals("{}", pageFetcher.fetch(baseUrl + "/api.php", 5000).getBody());
+    }
+    
+    @Test
+    void capsConnectionsPerHost() throws Exception {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getHttp().setMaxConnectionsPerHost(2);
+        replacePageFetcher(properties);
+        
+        List<Future<FetchedPage>> pages = fetchConcurrently(List.of(baseUrl, baseUrl, baseUrl, baseUrl, baseUrl));
+        awaitHeld(2);
+        sleep(Duration.ofMillis(200));
+        assertEquals(2, held.get(), "requests past the per-host limit wait for a connection");
+        
+        release.countDown();
+        for (Future<FetchedPage> page : pages) {
+            assertEquals("released", page.get(10, TimeUnit.SECONDS).getBody());
+        }
+        assertEquals(2, peakHeld.get());
+    }
+    
+    @Test
+    void capsConnectionsAcrossHosts() throws Exception {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getHttp().setMaxConnections(2);
+        properties.getHttp().setMaxConnectionsPerHost(4);
+        replacePageFetcher(properties);
+        // Another host name for the same server is another route with its own per-host limit
+        String otherHost = "http://localhost:" + server.getAddress().getPort();
+        
+        List<Future<FetchedPage>> pages = fetchConcurrently(List.of(baseUrl, baseUrl, otherHost, otherHost));
+        awaitHeld(2);
+        sleep(Duration.ofMillis(200));
+        assertEquals(2, held.get(), "requests past the total limit wait for a connection");
+        
+        release.countDown();
+        for (Future<FetchedPage> page : pages) {
+            assertEquals("released", page.get(10, TimeUnit.SECONDS).getBody());
+        }
+        assertEquals(2, peakHeld.get());
+    }
+    
+    @Test
+    void failsWhenNoPooledConnectionFreesUpInTime() throws Exception {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getHttp().setMaxConnectionsPerHost(1);
+        properties.getHttp().setConnectionRequestTimeout(Duration.ofMillis(200));
+        replacePageFetcher(properties);
+        
+        List<Future<FetchedPage>> holder = fetchConcurrently(List.of(baseUrl));
+        awaitHeld(1);
+        
+        assertThrows(ConnectionPoolTimeoutException.class, () -> pageFetcher.fetch(baseUrl + "/held", 5000));
+        release.countDown();
+        assertEquals("released", holder.get(0).get(10, TimeUnit.SECONDS).getBody());
+    }
+    
+    @Test
+    void reusesParsedResultWhenPageIsNotModified() throws IOException {
+        AtomicInteger parses = new AtomicInteger();
+        DocumentParser<String> parser = doc -> {
+            parses.incrementAndGet();
+            return doc.select("td").text();
+        };
+        String url = baseUrl + "/wiki/Promotional_Code";
+        
+        String first = pageFetcher.fetchParsed(url, 5000, parser);
+        String second = pageFetcher.fetchParsed(url, 5000, parser);
+        
+        assertEquals("GENSHINGIFT", first);
+        assertSame(first, second);
+        assertEquals(1, parses.get());
+        assertEquals("\"v1\"", ifNoneMatchHeaders.get(1));
+        assertEquals(1L, pageFetcher.getRevalidationStats().get(url).get("notModified"));
+        assertEquals(1L, pageFetcher.getRevalidationStats().get(url).get("unconditional"));
+    }
+    
+    @Test
+    void skipsParseWhenContentRegionIsUnchanged() throws IOException {
+        AtomicInteger parses = new AtomicInteger();
+        String url = baseUrl + "/fcmobile-redeem-codes";
+        ContentRegion main = ContentRegion.between("<main", "</main>");
+        
+        Integer first = pageFetcher.fetchParsed(url, 5000, main, doc -> parses.incrementAndGet());
+        Integer second = pageFetcher.fetchParsed(url, 5000, main, doc -> parses.incrementAndGet());
+        
+        assertEquals(1, parses.get());
+        assertSame(first, second);
+        assertEquals(1L, pageFetcher.getRevalidationStats().get(url).get("unchangedContent"));
+    }
+    
+    @Test
+    void parsesAgainWhenWholeBodyChanges() throws IOException {
+        AtomicInteger parses = new AtomicInteger();
+        String url = baseUrl + "/fcmobile-redeem-codes";
+        
+        pageFetcher.fetchParsed(url, 5000, doc -> parses.incrementAndGet());
+        pageFetcher.fetchParsed(url, 5000, doc -> parses.incrementAndGet());
+        
+        assertEquals(2, parses.get());
+        assertEquals(0L, pageFetcher.getRevalidationStats().get(url).get("unchangedContent"));
+    }
+    
+    private void replacePageFetcher(CouponScraperProperties properties) throws IOException {
+        pageFetcher.close();
+        pageFetcher = new PageFetcher(properties);
+    }
+    
+    /** Starts a fetch of {@code /held} on each of {@code hosts} at once, each on its own thread. */
+    private List<Future<FetchedPage>> fetchConcurrently(List<String> hosts) {
+        ExecutorService clients = Executors.newCachedThreadPool();
+        List<Future<FetchedPage>> pages = new ArrayList<>();
+        for (String host : hosts) {
+            pages.add(clients.submit(() -> pageFetcher.fetch(host + "/held", 10000)));
+        }
+        clients.shutdown();
+        return pages;
+    }
+    
+    private void awaitHeld(int expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (held.get() < expected) {
+            assertTrue(System.nanoTime() < deadline, "only " + held.get() + " requests reached the server");
+            sleep(Duration.ofMillis(5));
+        }
+    }
+    
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void serveWithEtag(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        ifNoneMatchHeaders.add(String.valueOf(ifNoneMatch));
+        acceptEncodingHeaders.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+        
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        if ("\"v1\"".equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(PAGE.getBytes(StandardCharsets.UTF_8));
+        }
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, compressed.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            compressed.writeTo(out);
+        }
+    }
+    
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
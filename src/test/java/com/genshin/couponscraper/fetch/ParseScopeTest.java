@@ -0,0 +1,142 @@
+package com.genshin.couponscraper.fetch;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseScopeTest {
+    
+    private static final ParseScope CODE_TABLES = ParseScope.tables("table#tpt-1", "table.wikitable.sortable");
+    
+    @Test
+    void keepsOnlyMatchingTablesInPageOrder() {
+        String page = "<html><head><title><table class=\"wikitable sortable\"></title>"
+                + "<script>var t = '<table class=\"wikitable sortable\"><tr><td>SCRIPT</td></tr></table>';</script></head>"
+                + "<body><!-- <table class=\"wikitable sortable\"><tr><td>COMMENT</td></tr></table> -->"
+                + "<table class=\"infobox\"><tr><td>INFOBOX</td></tr></table>"
+                + "<div title=\"<table id='tpt-1'>\"><TABLE Class='Sortable  WikiTable'><tr><td>FIRST"
+                + "<table class=\"inner\"><tr><td>NESTED</td></tr></table></td></tr></TABLE></div>"
+                + "<table class=\"wikitable\"><tr><td>UNSORTED</td></tr></table>"
+                + "<table id=\"tpt-1\" class=\"a&#32;b\"><tr><td>SECOND</td></tr></table>"
+                + "<table id=\"TPT-1\"><tr><td>WRONG ID</td></tr></table>"
+                + "</body></html>";
+        
+        String fragment = CODE_TABLES.fragment(page);
+        
+        assertEquals("<TABLE Class='Sortable  WikiTable'><tr><td>FIRST"
+                + "<table class=\"inner\"><tr><td>NESTED</td></tr></table></td></tr></TABLE>"
+                + "<table id=\"tpt-1\" class=\"a&#32;b\"><tr><td>SECOND</td></tr></table>", fragment);
+        assertSameSelection(page, "table#tpt-1, table.wikitable.sortable");
+    }
+    
+    @Test
+    void parsesWholePageWithoutACompleteMatch() {
+        assertNull(CODE_TABLES.fragment("<html><body><table class=\"wikitable\"></table></body></html>"));
+        assertNull(CODE_TABLES.fragment("<html><body><table id=\"tpt-1\"><tr><td>CUT OFF"));
+        assertNull(ParseScope.WHOLE_PAGE.fragment("<table id=\"tpt-1\"></table>"));
+        
+        Document doc = CODE_TABLES.parse("<html><body><p>intro</p><table class=\"wikitable\"></table></body></html>", "https://example.org/");
+        assertEquals("intro", doc.select("p").text());
+    }
+    
+    @Test
+    void rejectsSelectorsItCannotMatchWithoutADom() {
+        assertThrows(IllegalArgumentException.class, () -> ParseScope.tables("div.wikitable"));
+        assertThrows(IllegalArgumentException.class, () -> ParseScope.tables("table.wikitable tr"));
+        assertThrows(IllegalArgumentException.class, () -> ParseScope.tables("table[data-x]"));
+    }
+    
+    @Test
+    void parsesLessOfALargeWikiPage() {
+        String page = largeWikiPage();
+        String url = "https://genshin-impact.fandom.com/wiki/Promotional_Code";
+        int iterations = 30;
+        assertSameSelection(page, "table.wikitable.sortable");
+        
+        for (int i = 0; i < 10; i++) {
+            Jsoup.parse(page, url);
+            CODE_TABLES.parse(page, url);
+        }
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        
+        long fullBytes = threads.getThreadAllocatedBytes(threadId);
+        long fullStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Jsoup.parse(page, url);
+        }
+        long fullNanos = System.nanoTime() - fullStart;
+        fullBytes = threads.getThreadAllocatedBytes(threadId) - fullBytes;
+        
+        long scopedBytes = threads.getThreadAllocatedBytes(threadId);
+        long scopedStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            CODE_TABLES.parse(page, url);
+        }
+        long scopedNanos = System.nanoTime() - scopedStart;
+        scopedBytes = threads.getThreadAllocatedBytes(threadId) - scopedBytes;
+        
+        System.out.println("=== Wiki page parse, " + page.length() + " chars, " + iterations + " runs ===");
+        System.out.printf("Full page:   %7.2f ms/page, %,12d bytes/page%n", fullNanos / 1e6 / iterations, fullBytes / iterations);
+        System.out.printf("Code tables: %7.2f ms/page, %,12d bytes/page%n", scopedNanos / 1e6 / iterations, scopedBytes / iterations);
+        
+        assertTrue(scopedBytes * 4 < fullBytes, "scoped parse should allocate a fraction of a full parse");
+    }
+    
+    private static void assertSameSelection(String page, String selector) {
+        String url = "https://example.org/";
+        assertEquals(selected(Jsoup.parse(page, url), selector), selected(CODE_TABLES.parse(page, url), selector));
+    }
+    
+    private static String selected(Document doc, String selector) {
+        return doc.select(selector).stream().map(Element::outerHtml).collect(Collectors.joining("\n"));
+    }
+    
+    /** A fandom-sized page: navigation, ads, scripts and infoboxes around two code tables. */
+    private static String largeWikiPage() {
+        StringBuilder page = new StringBuilder("<!DOCTYPE html><html><head><title>Promotional Code</title>");
+        for (int i = 0; i < 40; i++) {
+            page.append("<script>window.ads = window.ads || []; ads.push({slot: 'slot-").append(i)
+                    .append("', html: '<table class=\"wikitable sortable\"></table>'});</script>");
+            page.append("<link rel=\"stylesheet\" href=\"/load.php?modules=site.styles&amp;v=").append(i).append("\">");
+        }
+        page.append("</head><body><nav class=\"global-navigation\"><ul>");
+        for (int i = 0; i < 600; i++) {
+            page.append("<li class=\"nav-item\"><a href=\"/wiki/Page_").append(i).append("\" title=\"Page ").append(i)
+                    .append("\"><span class=\"icon\"></span>Community page ").append(i).append("</a></li>");
+        }
+        page.append("</ul></nav><main><div class=\"mw-parser-output\">");
+        page.append("<aside class=\"portable-infobox\"><table class=\"infobox\">");
+        for (int i = 0; i < 50; i++) {
+            page.append("<tr><th>Field ").append(i).append("</th><td>Value ").append(i).append("</td></tr>");
+        }
+        page.append("</table></aside>");
+        for (int table = 0; table < 2; table++) {
+            page.append("<h2>").append(table == 0 ? "Active Codes" : "Expired Codes").append("</h2>")
+                    .append("<table class=\"wikitable sortable\"><tbody><tr><th>Code</th><th>Server</th><th>Rewards</th><th>Duration</th></tr>");
+            for (int i = 0; i < 30; i++) {
+                page.append("<tr><td><b><a href=\"https://genshin.hoyoverse.com/en/gift?code=CODE").append(table).append(i)
+                        .append("\">GENSHIN").append(table).append(i).append("</a></b></td><td>All</td>")
+                        .append("<td><span class=\"item\"><span class=\"item-text\">Primogem ×").append(i).append("</span></span></td>")
+                        .append("<td>Discovered: October ").append(i % 28 + 1).append(", 2025</td></tr>");
+            }
+            page.append("</tbody></table>");
+            for (int i = 0; i < 80; i++) {
+                page.append("<p>Paragraph ").append(i).append(" about codes, with <a href=\"/wiki/Primogem\">links</a> and <i>markup</i>.</p>");
+            }
+        }
+        page.append("</div></main><footer>");
+        for (int i = 0; i < 300; i++) {
+            page.append("<div class=\"footer-link\"><a href=\"/f/").append(i).append("\">Footer ").append(i).append("</a></div>");
+        }
+        page.append("<!-- NewPP limit report Cached time: 20251016 --></footer></body></html>");
+        return page.toString();
+    }
+}
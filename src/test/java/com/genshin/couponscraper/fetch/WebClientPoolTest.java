@@ -0,0 +1,149 @@
+package com.genshin.couponscraper.fetch;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebClientPoolTest {
+    
+    private final CouponScraperProperties properties = new CouponScraperProperties();
+    private WebClientPool pool;
+    
+    @BeforeEach
+    void setUp() {
+        properties.getHtmlUnit().setPoolSize(1);
+        properties.getHtmlUnit().setMaxUses(3);
+        properties.getHtmlUnit().setLeaseTimeout(Duration.ofMillis(200));
+        pool = new WebClientPool(properties);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+    
+    @Test
+    void reusesClientUntilMaxUses() throws IOException {
+        WebClient first;
+        try (WebClientPool.Lease lease = pool.lease()) {
+            first = lease.getWebClient();
+        }
+        try (WebClientPool.Lease lease = pool.lease()) {
+            assertSame(first, lease.getWebClient());
+        }
+        try (WebClientPool.Lease lease = pool.lease()) {
+            assertSame(first, lease.getWebClient());
+        }
+        try (WebClientPool.Lease lease = pool.lease()) {
+            assertNotSame(first, lease.getWebClient());
+        }
+        
+        assertEquals(2L, pool.getStats().get("created"));
+        assertEquals(1L, pool.getStats().get("recycled"));
+        assertEquals(4L, pool.getStats().get("leases"));
+    }
+    
+    @Test
+    void replacesBrokenClient() throws IOException {
+        WebClient first;
+        try (WebClientPool.Lease lease = pool.lease()) {
+            first = lease.getWebClient();
+            lease.markBroken();
+        }
+        try (WebClientPool.Lease lease = pool.lease()) {
+            assertNotSame(first, lease.getWebClient());
+        }
+    }
+    
+    @Test
+    void boundsConcurrentLeases() throws IOException {
+        try (WebClientPool.Lease lease = pool.lease()) {
+            assertNotNull(lease.getWebClient());
+            assertThrows(IOException.class, pool::lease);
+        }
+        assertEquals(0, pool.getStats().get("leased"));
+    }
+    
+    @Test
+    void blocksDeniedResourcesDuringRender() throws IOException {
+        List<String> served = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            served.add(path);
+            String body = switch (path) {
+                case "/app.js" -> "document.getElementById('codes').textContent = 'FCMOBILE2025';";
+                case "/tracker.js" -> "document.getElementById('codes').textContent = 'TRACKED';";
+                default -> "<html><body><p id=\"codes\"></p>"
+                        + "<script src=\"/app.js\"></script><script src=\"/tracker.js\"></script></body></html>";
+            };
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", path.endsWith(".js") ? "application/javascript" : "text/html");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        properties.getHtmlUnit().setBlockedResources(List.of("tracker.js"));
+        WebClientPool filtered = new WebClientPool(properties);
+        
+        try (WebClientPool.Lease lease = filtered.lease()) {
+            HtmlPage page = lease.getWebClient().getPage("http://127.0.0.1:" + server.getAddress().getPort() + "/page");
+            
+            assertEquals("FCMOBILE2025", page.getElementById("codes").getTextContent());
+            assertEquals(1, lease.getResourceStats().blockedRequests());
+            assertEquals(2, lease.getResourceStats().allowedRequests());
+        } finally {
+            filtered.close();
+            server.stop(0);
+        }
+        assertEquals(List.of("/page", "/app.js"), served);
+        assertEquals(1L, filtered.getStats().get("blockedRequests"));
+    }
+    
+    @Test
+    void awaitReadyReturnsOnceContentAppears() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] bytes = ("<html><body><p id=\"codes\"></p><script>"
+                    + "setTimeout(function() { document.getElementById('codes').textContent = 'FCMOBILE2025'; }, 200);"
+                    + "setTimeout(function() {}, 10000);"
+                    + "</script></body></html>").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        
+        try (WebClientPool.Lease lease = pool.lease()) {
+            HtmlPage page = lease.getWebClient().getPage("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+            
+            Optional<Duration> ready = lease.awaitReady(page, text -> text.contains("FCMOBILE2025"), Duration.ofSeconds(3));
+            Optional<Duration> never = lease.awaitReady(page, text -> text.contains("MISSING"), Duration.ofMillis(300));
+            
+            assertTrue(ready.isPresent());
+            assertTrue(ready.get().compareTo(Duration.ofSeconds(2)) < 0, "returned after " + ready.get());
+            assertTrue(never.isEmpty());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
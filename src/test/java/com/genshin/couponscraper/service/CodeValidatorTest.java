@@ -0,0 +1,95 @@
+package com.genshin.couponscraper.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeValidatorTest {
+    
+    private static final Set<String> FC_BLOCKLIST = new HashSet<>(Arrays.asList(
+        "REWARD", "GEMS", "EXPIRED", "CODE", "CODES", "HOME", "MORE", "COPY", "HERE", "OCTOBER", "TICKETS"
+    ));
+    
+    private static final CodeValidator FC_VALIDATOR = CodeValidator.builder()
+            .length(6, 20)
+            .upperCaseLetters()
+            .digits()
+            .minLetters(2)
+            .blockWords(FC_BLOCKLIST)
+            .blockPrefixes("COPY", "HERE", "MORE", "PAGE", "HOME", "MENU", "EXPIRED")
+            .ignoreCase()
+            .build();
+    
+    // The checks FCMobileScraperService.isValidCode made before it used CodeValidator
+    private static final Predicate<String> FC_REGEX_CHECKS = code -> code != null && !code.isBlank()
+            && code.length() >= 6 && code.length() <= 20
+            && !FC_BLOCKLIST.contains(code.toUpperCase())
+            && code.matches("^[A-Z0-9]{6,20}$")
+            && !code.matches("\\d{6,}")
+            && code.chars().filter(Character::isLetter).count() >= 2
+            && !code.matches("^(COPY|HERE|MORE|PAGE|HOME|MENU|EXPIRED).*");
+    
+    @Test
+    void combinesLengthCharacterAndKeywordChecks() {
+        assertTrue(FC_VALIDATOR.isValid("FCMOBILE2025"));
+        assertFalse(FC_VALIDATOR.isValid("OCTOBER"), "blocked word");
+        assertFalse(FC_VALIDATOR.isValid("COPYCODE1"), "blocked prefix");
+        assertTrue(FC_VALIDATOR.isValid("CODEX12"), "blocked word as a prefix only");
+        assertFalse(FC_VALIDATOR.isValid("fcmobile2025"), "lower case");
+        assertFalse(FC_VALIDATOR.isValid("123456"), "no letters");
+        assertFalse(FC_VALIDATOR.isValid("A12345"), "one letter");
+        assertFalse(FC_VALIDATOR.isValid("ABC12"), "too short");
+        assertFalse(FC_VALIDATOR.isValid("ABCDEFGHIJKLMNOPQRSTU"), "too long");
+        assertFalse(FC_VALIDATOR.isValid("FC-2025"), "punctuation");
+        assertFalse(FC_VALIDATOR.isValid(null));
+    }
+    
+    @Test
+    void blockedWordsIgnoreCaseWhenConfigured() {
+        CodeValidator caseSensitive = CodeValidator.builder()
+                .upperCaseLetters().lowerCaseLetters().blockWords("Header").build();
+        CodeValidator caseInsensitive = CodeValidator.builder()
+                .upperCaseLetters().lowerCaseLetters().blockWords("Header").ignoreCase().build();
+        
+        assertTrue(caseSensitive.isValid("HEADER"));
+        assertFalse(caseSensitive.isValid("Header"));
+        assertFalse(caseInsensitive.isValid("HEADER"));
+        assertFalse(caseInsensitive.isValid("header"));
+    }
+    
+    @Test
+    void rejectsBlockedKeywordsThatCanNeverMatch() {
+        CodeValidator.Builder spaced = CodeValidator.builder().upperCaseLetters().blockWords("Coupon Code");
+        CodeValidator.Builder hyphenated = CodeValidator.builder().upperCaseLetters().blockPrefixes("FC-");
+        
+        assertThrows(IllegalArgumentException.class, spaced::build);
+        assertThrows(IllegalArgumentException.class, hyphenated::build);
+    }
+    
+    @Test
+    void agreesWithPreviousRegexChecksOnRandomTokens() {
+        String alphabet = "ABCDEOPRYHMGT0123456789abz-_ ";
+        String[] seeds = {"COPY", "HERE", "MORE", "EXPIRED", "OCTOBER", "GEMS", "CODE", "FC", "2025"};
+        Random random = new Random(7);
+        
+        for (int i = 0; i < 50_000; i++) {
+            StringBuilder token = new StringBuilder();
+            if (random.nextInt(3) == 0) {
+                token.append(seeds[random.nextInt(seeds.length)]);
+            }
+            int extra = random.nextInt(22);
+            for (int k = 0; k < extra; k++) {
+                token.append(alphabet.charAt(random.nextInt(random.nextBoolean() ? 23 : alphabet.length())));
+            }
+            String code = token.toString();
+            
+            assertEquals(FC_REGEX_CHECKS.test(code), FC_VALIDATOR.isValid(code), () -> "token: " + code);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.AggregateCouponResponse;
+import com.genshin.couponscraper.model.AggregateCouponResponse.SourceStatus;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.Game;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CouponAggregationServiceTest {
+    
+    private final CouponCacheService cacheService = mock(CouponCacheService.class);
+    private ExecutorService fanOutExecutor;
+    private CouponAggregationService aggregationService;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        // As small as the platform-thread default allows: one thread per game
+        fanOutExecutor = Executors.newFixedThreadPool(Game.values().length);
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getAggregate().setTimeout(Duration.ofMillis(300));
+        aggregationService = new CouponAggregationService(cacheService, fanOutExecutor, properties);
+        for (Game game : Game.values()) {
+            when(cacheService.getCoupons(game)).thenReturn(List.of(coupon(game.getSlug().toUpperCase())));
+        }
+    }
+    
+    @AfterEach
+    void tearDown() {
+        fanOutExecutor.shutdownNow();
+    }
+    
+    @Test
+    void returnsTheSourcesThatFinishedWhenOneMissesTheDeadline() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(cacheService.getCoupons(Game.GENSHIN)).thenAnswer(invocation -> hang(interrupted));
+        
+        AggregateCouponResponse response = aggregationService.getAllCoupons();
+        
+        assertEquals(SourceStatus.TIMEOUT, response.getSources().get("genshin").getStatus());
+        assertFalse(response.getCoupons().containsKey("genshin"));
+        for (Game game : Game.values()) {
+            if (game != Game.GENSHIN) {
+                assertEquals(SourceStatus.OK, response.getSources().get(game.getSlug()).getStatus());
+                assertEquals(1, response.getCoupons().get(game.getSlug()).size());
+            }
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "timed-out load was not cancelled");
+    }
+    
+    @Test
+    void failureOfOneSourceDoesNotAffectTheOthers() throws Exception {
+        when(cacheService.getCoupons(Game.HONKAI_STAR_RAIL)).thenThrow(new IOException("upstream returned 503"));
+        when(cacheService.getCoupons(Game.BLOX_FRUITS)).thenThrow(new IllegalStateException("parser broke"));
+        
+        AggregateCouponResponse response = aggregationService.getAllCoupons();
+        
+        SourceStatus honkai = response.getSources().get("honkai-star-rail");
+        assertEquals(SourceStatus.ERROR, honkai.getStatus());
+        assertEquals("upstream returned 503", honkai.getMessage());
+        assertEquals(SourceStatus.ERROR, response.getSources().get("blox-fruits").getStatus());
+        assertEquals("parser broke", response.getSources().get("blox-fruits").getMessage());
+        assertEquals(SourceStatus.OK, response.getSources().get("genshin").getStatus());
+        assertEquals(SourceStatus.OK, response.getSources().get("play-together").getStatus());
+        assertEquals(SourceStatus.OK, response.getSources().get("fc-mobile").getStatus());
+    }
+    
+    @Test
+    void hungSourceDoesNotExhaustTheFanOutPool() throws Exception {
+        AtomicInteger hung = new AtomicInteger();
+        CountDownLatch interrupted = new CountDownLatch(Game.values().length * 2);
+        when(cacheService.getCoupons(Game.GENSHIN)).thenAnswer(invocation -> {
+            hung.incrementAndGet();
+            return hang(interrupted);
+        });
+        
+        // Without cancellation every request would leave one more pool thread hanging,
+        // and the requests after the pool size would get nothing back
+        for (int request = 0; request < Game.values().length * 2; request++) {
+            AggregateCouponResponse response = aggregationService.getAllCoupons();
+            assertEquals(SourceStatus.TIMEOUT, response.getSources().get("genshin").getStatus());
+            for (Game game : Game.values()) {
+                if (game != Game.GENSHIN) {
+                    assertEquals(SourceStatus.OK, response.getSources().get(game.getSlug()).getStatus(),
+                            game.getSlug() + " in request " + request);
+                }
+            }
+        }
+        assertEquals(Game.values().length * 2, hung.get());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "timed-out loads were not cancelled");
+    }
+    
+    /** Blocks like a scrape against an upstream that never answers, until interrupted. */
+    private static List<CouponResponse> hang(CountDownLatch interrupted) {
+        try {
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return List.of();
+    }
+    
+    private static CouponResponse coupon(String code) {
+        return new CouponResponse(code, "Reward", "1st January", "Active", "Global");
+    }
+}
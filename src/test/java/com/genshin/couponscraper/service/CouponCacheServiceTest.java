@@ -0,0 +1,151 @@
+package com.genshin.couponscraper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.store.SnapshotStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CouponCacheServiceTest {
+    
+    private final GenshinImpactScraperService genshin = mock(GenshinImpactScraperService.class);
+    private ExecutorService executor;
+    private ExecutorService attemptExecutor;
+    private ScheduledExecutorService retryScheduler;
+    
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        attemptExecutor = Executors.newCachedThreadPool();
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        attemptExecutor.shutdownNow();
+        retryScheduler.shutdownNow();
+    }
+    
+    private CouponCacheService cacheWithTtl(Duration ttl) {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getRetry().setMaxAttempts(1);
+        return cache(ttl, properties);
+    }
+    
+    private CouponCacheService cache(Duration ttl, CouponScraperProperties properties) {
+        properties.getCache().setTtl(ttl);
+        properties.getStore().setEnabled(false);
+        return new CouponCacheService(genshin, mock(HonkaiStarRailScraperService.class),
+                mock(BloxFruitsScraperService.class), mock(PlayTogetherScraperService.class),
+                mock(FCMobileScraperService.class), new CouponResponseEncoder(new ObjectMapper()),
+                new RetryExecutor(attemptExecutor, retryScheduler, properties), new SnapshotStore(properties),
+                event -> {}, executor, properties);
+    }
+    
+    private static List<CouponResponse> coupons(String code) {
+        return List.of(new CouponResponse(code, "Primogem x60", "1st January", "Active", "Global"));
+    }
+    
+    @Test
+    void servesCachedSnapshotWithinTtl() throws Exception {
+        when(genshin.fetchActiveCoupons()).thenReturn(coupons("FIRSTCODE"));
+        CouponCacheService cache = cacheWithTtl(Duration.ofMinutes(5));
+        
+        cache.getCoupons(Game.GENSHIN);
+        List<CouponResponse> second = cache.getCoupons(Game.GENSHIN);
+        
+        assertEquals("FIRSTCODE", second.get(0).getCode());
+        verify(genshin, times(1)).fetchActiveCoupons();
+    }
+    
+    @Test
+    void servesStaleSnapshotWhileRefreshingInBackground() throws Exception {
+        when(genshin.fetchActiveCoupons()).thenReturn(coupons("FIRSTCODE")).thenReturn(coupons("SECONDCODE"));
+        CouponCacheService cache = cacheWithTtl(Duration.ZERO);
+        
+        cache.getCoupons(Game.GENSHIN);
+        Thread.sleep(5);
+        List<CouponResponse> stale = cache.getCoupons(Game.GENSHIN);
+        
+        assertEquals("FIRSTCODE", stale.get(0).getCode());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals("SECONDCODE", cache.peekSnapshot(Game.GENSHIN).orElseThrow().getCoupons().get(0).getCode());
+    }
+    
+    @Test
+    void failedRefreshKeepsPreviousSnapshot() throws Exception {
+        when(genshin.fetchActiveCoupons()).thenReturn(coupons("FIRSTCODE")).thenThrow(new IOException("down"));
+        CouponCacheService cache = cacheWithTtl(Duration.ZERO);
+        
+        cache.getCoupons(Game.GENSHIN);
+        Thread.sleep(5);
+        cache.getCoupons(Game.GENSHIN);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        
+        assertEquals("FIRSTCODE", cache.peekSnapshot(Game.GENSHIN).orElseThrow().getCoupons().get(0).getCode());
+    }
+    
+    @Test
+    void openCircuitFailsFastAndProbesOnce() throws Exception {
+        when(genshin.fetchActiveCoupons())
+                .thenThrow(new SocketTimeoutException("Read timed out"), new IOException("502"))
+                .thenReturn(coupons("RECOVERED"));
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getRetry().setMaxAttempts(1);
+        properties.getBreaker().setFailureThreshold(2);
+        properties.getBreaker().setOpenDuration(Duration.ofMillis(200));
+        CouponCacheService cache = cache(Duration.ofMinutes(5), properties);
+        
+        assertThrows(SocketTimeoutException.class, () -> cache.getCoupons(Game.GENSHIN));
+        assertThrows(IOException.class, () -> cache.getCoupons(Game.GENSHIN));
+        assertThrows(CircuitOpenException.class, () -> cache.getCoupons(Game.GENSHIN));
+        verify(genshin, times(2)).fetchActiveCoupons();
+        assertEquals(CircuitBreaker.State.OPEN, cache.getBreakerStats().get("genshin").get("state"));
+        
+        Thread.sleep(250);
+        assertEquals("RECOVERED", cache.getCoupons(Game.GENSHIN).get(0).getCode());
+        verify(genshin, times(3)).fetchActiveCoupons();
+        
+        Map<String, Object> stats = cache.getBreakerStats().get("genshin");
+        assertEquals(CircuitBreaker.State.CLOSED, stats.get("state"));
+        assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED),
+                ((List<?>) stats.get("transitions")).stream().map(t -> ((CircuitBreaker.Transition) t).to()).toList());
+    }
+    
+    @Test
+    void openCircuitServesLastSnapshotWithoutRefreshing() throws Exception {
+        when(genshin.fetchActiveCoupons()).thenReturn(coupons("FIRSTCODE")).thenThrow(new IOException("down"));
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getRetry().setMaxAttempts(1);
+        properties.getBreaker().setFailureThreshold(1);
+        CouponCacheService cache = cache(Duration.ZERO, properties);
+        
+        cache.getCoupons(Game.GENSHIN);
+        assertThrows(IOException.class, () -> cache.refresh(Game.GENSHIN));
+        Thread.sleep(5);
+        
+        assertEquals("FIRSTCODE", cache.getCoupons(Game.GENSHIN).get(0).getCode());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        verify(genshin, times(2)).fetchActiveCoupons();
+    }
+}
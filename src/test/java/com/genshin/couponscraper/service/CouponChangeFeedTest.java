@@ -0,0 +1,157 @@
+package com.genshin.couponscraper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CouponChangeFeedTest {
+    
+    private static final Instant START = Instant.parse("2025-10-16T08:00:00Z");
+    
+    private final ScheduledExecutorService streamExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService deliveryExecutor = Executors.newCachedThreadPool();
+    // Released at the end so the stalled client's write returns
+    private final CountDownLatch unstall = new CountDownLatch(1);
+    // Emitters handed out to the next subscriptions, in order
+    private final Deque<SseEmitter> emitters = new ArrayDeque<>();
+    private CouponScraperProperties properties;
+    
+    @BeforeEach
+    void setUp() {
+        properties = new CouponScraperProperties();
+        properties.getStream().setSubscriberQueue(4);
+        properties.getStream().setHeartbeat(Duration.ofHours(1));
+        properties.getStream().setSendTimeout(Duration.ofHours(1));
+    }
+    
+    @AfterEach
+    void tearDown() {
+        unstall.countDown();
+        streamExecutor.shutdownNow();
+        deliveryExecutor.shutdownNow();
+    }
+    
+    /** A client that reads everything it is sent. */
+    private static class ReadingEmitter extends SseEmitter {
+        
+        final List<String> frames = new CopyOnWriteArrayList<>();
+        
+        @Override
+        public void send(Set<DataWithMediaType> frame) {
+            frames.add(frame.stream().map(part -> part.getData().toString()).collect(Collectors.joining()));
+        }
+        
+        long changes() {
+            return frames.stream().filter(frame -> frame.contains("event:change")).count();
+        }
+    }
+    
+    /** A client that stops reading, so its first write never returns. */
+    private class StalledEmitter extends SseEmitter {
+        
+        final AtomicInteger writes = new AtomicInteger();
+        
+        @Override
+        public void send(Set<DataWithMediaType> frame) {
+            writes.incrementAndGet();
+            try {
+                unstall.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    @Test
+    void evictsASubscriberThatStopsReadingWithoutHoldingUpTheOthers() throws Exception {
+        CouponChangeFeed feed = feed();
+        StalledEmitter stalled = new StalledEmitter();
+        ReadingEmitter reading = new ReadingEmitter();
+        emitters.add(stalled);
+        emitters.add(reading);
+        feed.subscribe(Game.GENSHIN, null);
+        feed.subscribe(Game.GENSHIN, null);
+        
+        // The reading client keeps pace, the stalled one falls further behind with each change
+        for (int i = 0; i < 10; i++) {
+            feed.onSnapshotUpdated(new SnapshotUpdatedEvent(snapshot(i), snapshot(i + 1)));
+            int published = i + 1;
+            awaitUntil(() -> reading.changes() == published);
+        }
+        
+        assertEquals(10L, feed.getStats().get("published"));
+        assertEquals(1L, feed.getStats().get("evicted"), "the stalled subscriber overflowed its queue");
+        assertEquals(1L, feed.getStats().get("subscribers"));
+        assertEquals(1, stalled.writes.get(), "nothing more is written to an evicted subscriber");
+    }
+    
+    @Test
+    void evictsASubscriberWhoseWriteIsStuckPastTheSendTimeout() throws Exception {
+        properties.getStream().setSubscriberQueue(32);
+        properties.getStream().setHeartbeat(Duration.ofMillis(50));
+        properties.getStream().setSendTimeout(Duration.ofMillis(200));
+        CouponChangeFeed feed = feed();
+        StalledEmitter stalled = new StalledEmitter();
+        ReadingEmitter reading = new ReadingEmitter();
+        emitters.add(stalled);
+        emitters.add(reading);
+        feed.subscribe(Game.GENSHIN, null);
+        feed.subscribe(null, null);
+        
+        feed.onSnapshotUpdated(new SnapshotUpdatedEvent(snapshot(0), snapshot(1)));
+        
+        awaitUntil(() -> feed.getStats().get("evicted") == 1);
+        assertEquals(1L, feed.getStats().get("subscribers"));
+        assertEquals(1, reading.changes());
+        assertTrue(reading.frames.stream().anyMatch(frame -> frame.contains(":heartbeat")),
+                "the reading subscriber keeps getting heartbeats");
+    }
+    
+    private CouponChangeFeed feed() {
+        return new CouponChangeFeed(new ObjectMapper().findAndRegisterModules(), streamExecutor, deliveryExecutor,
+                properties) {
+            @Override
+            SseEmitter newEmitter(long timeoutMillis) {
+                return emitters.remove();
+            }
+        };
+    }
+    
+    private static CouponSnapshot snapshot(int n) {
+        return new CouponSnapshot(Game.GENSHIN,
+                List.of(new CouponResponse("CODE" + n, "Primogem x60", "1st January", "Active", "Global")),
+                START.plusSeconds(n));
+    }
+    
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for the stream");
+            Thread.sleep(10);
+        }
+    }
+}
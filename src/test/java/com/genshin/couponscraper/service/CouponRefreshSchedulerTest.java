@@ -0,0 +1,160 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class CouponRefreshSchedulerTest {
+    
+    private static final Duration INTERVAL = Duration.ofMinutes(5);
+    private static final Duration JITTER = Duration.ofSeconds(30);
+    
+    private final CouponCacheService cacheService = mock(CouponCacheService.class);
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final ExecutorService scrapeExecutor = mock(ExecutorService.class);
+    // What was handed to each executor, in order, to be run by the test
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<Runnable> dispatched = new ArrayList<>();
+    private CouponScraperProperties properties;
+    private CouponRefreshScheduler refreshScheduler;
+    
+    @BeforeEach
+    void setUp() {
+        properties = new CouponScraperProperties();
+        properties.getRefresh().setDefaultInterval(INTERVAL);
+        properties.getRefresh().setJitter(JITTER);
+        when(cacheService.peekSnapshot(any())).thenReturn(Optional.empty());
+        when(scheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS))).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            delays.add(invocation.getArgument(1));
+            return null;
+        });
+        doAnswer(invocation -> dispatched.add(invocation.getArgument(0))).when(scrapeExecutor).execute(any());
+        refreshScheduler = new CouponRefreshScheduler(cacheService, scheduler, scrapeExecutor, properties);
+    }
+    
+    @Test
+    void refreshesGamesWithoutSnapshotAtStartupAndJittersTheRest() {
+        when(cacheService.peekSnapshot(Game.GENSHIN)).thenReturn(Optional.of(
+                new CouponSnapshot(Game.GENSHIN, List.of(), Instant.now())));
+        
+        refreshScheduler.start();
+        
+        assertEquals(Game.values().length, delays.size());
+        // Scheduled in declaration order, Genshin first
+        assertTrue(delays.get(0) >= 0 && delays.get(0) <= JITTER.toMillis(), "first run in " + delays.get(0));
+        delays.subList(1, delays.size()).forEach(delay -> assertEquals(0L, delay));
+    }
+    
+    @Test
+    void schedulesNothingWhenDisabled() {
+        properties.getRefresh().setEnabled(false);
+        
+        refreshScheduler.start();
+        
+        verifyNoInteractions(scheduler, scrapeExecutor);
+    }
+    
+    @Test
+    void runsTheRefreshOnTheScrapeExecutor() throws IOException {
+        refreshScheduler.start();
+        
+        scheduled.get(0).run();
+        verify(cacheService, never()).refresh(any());
+        assertEquals(1, dispatched.size());
+        
+        dispatched.get(0).run();
+        verify(cacheService).refresh(Game.GENSHIN);
+    }
+    
+    @Test
+    void reschedulesWithinIntervalPlusJitter() throws IOException {
+        refreshScheduler.start();
+        
+        scheduled.get(0).run();
+        for (int run = 0; run < 50; run++) {
+            lastDispatched().run();
+            long delay = delays.get(delays.size() - 1);
+            assertTrue(delay >= INTERVAL.toMillis() && delay <= INTERVAL.plus(JITTER).toMillis(),
+                    "next run in " + delay);
+            lastScheduled().run();
+        }
+        verify(cacheService, times(50)).refresh(Game.GENSHIN);
+    }
+    
+    @Test
+    void reschedulesAfterFailedRefresh() throws IOException {
+        when(cacheService.refresh(Game.GENSHIN)).thenThrow(new IOException("upstream down"));
+        refreshScheduler.start();
+        
+        scheduled.get(0).run();
+        lastDispatched().run();
+        lastScheduled().run();
+        lastDispatched().run();
+        
+        verify(cacheService, times(2)).refresh(Game.GENSHIN);
+        assertEquals(Game.values().length + 2, scheduled.size());
+    }
+    
+    @Test
+    void skipsAndReschedulesWhileCircuitIsOpen() throws IOException {
+        when(cacheService.refresh(Game.GENSHIN)).thenThrow(new CircuitOpenException("Genshin Impact", Duration.ofSeconds(30)));
+        refreshScheduler.start();
+        
+        scheduled.get(0).run();
+        lastDispatched().run();
+        
+        assertEquals(Game.values().length + 1, scheduled.size());
+        assertTrue(delays.get(delays.size() - 1) >= INTERVAL.toMillis());
+    }
+    
+    @Test
+    void reschedulesWhenTheScrapeExecutorRejects() throws IOException {
+        doThrow(new RejectedExecutionException()).when(scrapeExecutor).execute(any());
+        refreshScheduler.start();
+        
+        scheduled.get(0).run();
+        
+        verify(cacheService, never()).refresh(any());
+        assertEquals(Game.values().length + 1, scheduled.size());
+        assertTrue(delays.get(delays.size() - 1) >= INTERVAL.toMillis());
+    }
+    
+    @Test
+    void stopsReschedulingOnceShutDown() {
+        refreshScheduler.start();
+        scheduled.get(0).run();
+        when(scheduler.isShutdown()).thenReturn(true);
+        
+        lastDispatched().run();
+        
+        assertEquals(Game.values().length, scheduled.size());
+    }
+    
+    private Runnable lastScheduled() {
+        return scheduled.get(scheduled.size() - 1);
+    }
+    
+    private Runnable lastDispatched() {
+        return dispatched.get(dispatched.size() - 1);
+    }
+}
@@ -0,0 +1,366 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.model.CouponResponse;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the single-pass scanner against the regex strategies it replaced, on a saved
+ * codes page and on randomly generated text. The speed comparisons are benchmarks, run
+ * with {@code mvn test -Pbenchmark}.
+ */
+class FCMobileCodeScannerTest {
+    
+    private static final Predicate<String> ANY_CODE = code -> true;
+    private static final Predicate<String> PLAUSIBLE_CODE = code -> code.matches("[A-Z0-9]{6,20}")
+            && code.chars().filter(Character::isLetter).count() >= 2;
+    
+    private static final String[] VOCABULARY = {
+        "Reward:", "reward:", "REWARD :", "rewards:", "15th", "3", "22nd", "1st", "x12th", "2025", "12", "5",
+        "October", "May", "MAY2024", "FCMOBILE25", "ABCDEF", "TOTS2024XYZ", "abcdef12", "ZZZ999", "ABC_DEF123",
+        "TOOLONGCODE1234567890X", "COPY", "copy", "COPYRIGHT", "Expired", "expired!", "EXPIRED", "GEMS", "100",
+        "Gems", "pack", "points", "é", "ÉCLAIR", "_", ",", ":", "-", "(87", "OVR)", "Code:", "15thOctober"
+    };
+    private static final String[] SEPARATORS = {" ", " ", " ", "", "  ", "\t", "\n"};
+    private static final double MAX_READS_PER_CHAR = 16;
+    
+    @Test
+    void matchesRegexStrategiesOnSavedPage() throws IOException {
+        String text = savedPageText();
+        
+        List<String> expected = describe(unique(LegacyExtraction.extract(text, PLAUSIBLE_CODE)));
+        List<String> actual = describe(FCMobileCodeScanner.scan(text, PLAUSIBLE_CODE));
+        
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+    
+    @Test
+    void matchesRegexStrategiesOnRandomText() {
+        Random random = new Random(42);
+        for (int round = 0; round < 3000; round++) {
+            StringBuilder text = new StringBuilder();
+            int tokens = 1 + random.nextInt(40);
+            for (int i = 0; i < tokens; i++) {
+                text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+                text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            String input = text.toString();
+            
+            for (Predicate<String> validCode : List.of(ANY_CODE, PLAUSIBLE_CODE)) {
+                assertEquals(describe(unique(LegacyExtraction.extract(input, validCode))),
+                        describe(FCMobileCodeScanner.scan(input, validCode)), () -> "input: " + input);
+            }
+        }
+    }
+    
+    @Test
+    @Tag("benchmark")
+    void benchmarkAgainstRegexStrategies() throws IOException {
+        String text = savedPageText();
+        int iterations = 40;
+        
+        // Warm up both implementations before timing them
+        for (int i = 0; i < iterations; i++) {
+            LegacyExtraction.extract(text, PLAUSIBLE_CODE);
+            FCMobileCodeScanner.scan(text, PLAUSIBLE_CODE);
+        }
+        
+        long legacyStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            LegacyExtraction.extract(text, PLAUSIBLE_CODE);
+        }
+        long legacyNanos = System.nanoTime() - legacyStart;
+        
+        long scannerStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            FCMobileCodeScanner.scan(text, PLAUSIBLE_CODE);
+        }
+        long scannerNanos = System.nanoTime() - scannerStart;
+        
+        System.out.println("=== FC Mobile extraction, " + text.length() + " chars, " + iterations + " runs ===");
+        System.out.printf("Regex strategies:    %.1f us/page%n", legacyNanos / 1000.0 / iterations);
+        System.out.printf("Single-pass scanner: %.1f us/page%n", scannerNanos / 1000.0 / iterations);
+    }
+    
+    @Test
+    void readsEachCharacterABoundedNumberOfTimes() {
+        int[] sizes = {2_500, 5_000, 10_000, 20_000};
+        double[] readsPerChar = new double[sizes.length];
+        
+        for (int i = 0; i < sizes.length; i++) {
+            CountingText text = new CountingText(syntheticPage(sizes[i]));
+            assertEquals(sizes[i], FCMobileCodeScanner.scan(text, PLAUSIBLE_CODE).size());
+            readsPerChar[i] = (double) text.reads / text.length();
+        }
+        
+        // A scan that went back over the text per candidate would read each character
+        // about 8x as often for 8x the candidates; a linear one reads it as often
+        for (int i = 0; i < sizes.length; i++) {
+            assertTrue(readsPerChar[i] <= MAX_READS_PER_CHAR,
+                    sizes[i] + " codes: " + readsPerChar[i] + " reads per character");
+        }
+        assertEquals(readsPerChar[0], readsPerChar[sizes.length - 1], 0.1 * readsPerChar[0],
+                "reads per character grew with the input: " + Arrays.toString(readsPerChar));
+    }
+    
+    @Test
+    @Tag("benchmark")
+    void benchmarkScalingWithCandidateTokens() {
+        int[] sizes = {2_500, 5_000, 10_000, 20_000};
+        long[] nanos = new long[sizes.length];
+        
+        for (int i = 0; i < sizes.length; i++) {
+            nanos[i] = medianScanNanos(syntheticPage(sizes[i]));
+        }
+        
+        System.out.println("=== FC Mobile extraction scaling (each code appears twice) ===");
+        for (int i = 0; i < sizes.length; i++) {
+            System.out.printf("%,7d codes: %8.2f ms (%.0f ns/code)%n",
+                    sizes[i], nanos[i] / 1e6, (double) nanos[i] / sizes[i]);
+        }
+        System.out.printf("Growth for 8x the codes: %.1fx%n", (double) nanos[sizes.length - 1] / nanos[0]);
+    }
+    
+    private static long medianScanNanos(String text) {
+        long[] runs = new long[7];
+        for (int i = 0; i < 3; i++) {
+            FCMobileCodeScanner.scan(text, PLAUSIBLE_CODE);
+        }
+        for (int i = 0; i < runs.length; i++) {
+            long start = System.nanoTime();
+            FCMobileCodeScanner.scan(text, PLAUSIBLE_CODE);
+            runs[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(runs);
+        return runs[runs.length / 2];
+    }
+    
+    /** Forum-like page of dated sections, each listing 50 codes, every code listed twice. */
+    private static String syntheticPage(int codes) {
+        StringBuilder text = new StringBuilder();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < codes; i++) {
+                if (i % 50 == 0) {
+                    text.append(" Reward: 100 Gems ").append(1 + (i / 50) % 28).append("th October ");
+                }
+                text.append(String.format("FC%06dX ", i));
+            }
+        }
+        return text.toString();
+    }
+    
+    /** Text that counts how many of its characters are read, one by one or copied out. */
+    private static final class CountingText implements CharSequence {
+        
+        private final String text;
+        long reads;
+        
+        CountingText(String text) {
+            this.text = text;
+        }
+        
+        @Override
+        public int length() {
+            return text.length();
+        }
+        
+        @Override
+        public char charAt(int index) {
+            reads++;
+            return text.charAt(index);
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            reads += end - start;
+            return text.subSequence(start, end);
+        }
+        
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+    
+    private static String savedPageText() throws IOException {
+        try (InputStream in = FCMobileCodeScannerTest.class.getResourceAsStream("/pages/fcmobile-redeem-codes.html")) {
+            assertNotNull(in);
+            return Jsoup.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8)).text();
+        }
+    }
+    
+    /** De-duplicates by code the way the service did before the scanner kept a seen-set. */
+    private static List<CouponResponse> unique(List<CouponResponse> codes) {
+        Map<String, CouponResponse> uniqueCodes = new LinkedHashMap<>();
+        for (CouponResponse code : codes) {
+            uniqueCodes.put(code.getCode(), code);
+        }
+        return new ArrayList<>(uniqueCodes.values());
+    }
+    
+    private static List<String> describe(List<CouponResponse> codes) {
+        return codes.stream()
+                .map(c -> c.getCode() + " | " + c.getReward() + " | " + c.getDate())
+                .collect(Collectors.toList());
+    }
+    
+    /** The three regex strategies {@code FCMobileScraperService} used before the scanner. */
+    static final class LegacyExtraction {
+        
+        static List<CouponResponse> extract(String fullText, Predicate<String> isValidCode) {
+            List<CouponResponse> activeCodes = new ArrayList<>();
+            
+            Pattern activeWithCopyPattern = Pattern.compile(
+                "(?i)(?:reward:\\s*([^\\n]*?)\\s*)?" +
+                "(\\d{1,2}(?:st|nd|rd|th)?\\s+\\w+)\\s+" +
+                "([A-Z0-9]{6,20})\\s+" +
+                "COPY",
+                Pattern.MULTILINE
+            );
+            
+            Matcher copyMatcher = activeWithCopyPattern.matcher(fullText);
+            while (copyMatcher.find()) {
+                String reward = copyMatcher.group(1);
+                String date = copyMatcher.group(2);
+                String code = copyMatcher.group(3);
+                
+                if (isValidCode.test(code)) {
+                    String cleanReward = (reward != null && !reward.trim().isEmpty()) ?
+                        reward.trim() : "Unknown reward";
+                    activeCodes.add(new CouponResponse(code, cleanReward, date, "Active", "Global"));
+                }
+            }
+            
+            String[] sections = fullText.split("(?i)(?=\\d{1,2}(?:st|nd|rd|th)?\\s+\\w+)");
+            
+            for (String section : sections) {
+                if (section.trim().isEmpty()) continue;
+                if (section.toLowerCase().contains("expired")) {
+                    continue;
+                }
+                
+                Pattern codeInSectionPattern = Pattern.compile("\\b([A-Z0-9]{6,20})\\b");
+                Matcher codeMatcher = codeInSectionPattern.matcher(section);
+                
+                while (codeMatcher.find()) {
+                    String code = codeMatcher.group(1);
+                    
+                    if (!isValidCode.test(code)) continue;
+                    
+                    boolean alreadyExists = activeCodes.stream()
+                        .anyMatch(c -> c.getCode().equals(code));
+                    if (alreadyExists) continue;
+                    
+                    String reward = extractRewardFromSection(section, code);
+                    String date = extractDateFromSection(section);
+                    activeCodes.add(new CouponResponse(code, reward, date, "Active", "Global"));
+                }
+            }
+            
+            Pattern rewardBlockPattern = Pattern.compile(
+                "(?i)reward:\\s*([^\\n]*?)\\s*" +
+                "(\\d{1,2}(?:st|nd|rd|th)?\\s+\\w+)",
+                Pattern.MULTILINE
+            );
+            
+            Matcher rewardMatcher = rewardBlockPattern.matcher(fullText);
+            while (rewardMatcher.find()) {
+                String reward = rewardMatcher.group(1).trim();
+                String date = rewardMatcher.group(2);
+                
+                int endPos = rewardMatcher.end();
+                String afterReward = fullText.substring(endPos, Math.min(endPos + 100, fullText.length()));
+                
+                if (afterReward.toLowerCase().contains("expired")) {
+                    continue;
+                }
+                
+                Pattern codeAfterRewardPattern = Pattern.compile("\\b([A-Z0-9]{6,20})\\b");
+                Matcher codeAfterMatcher = codeAfterRewardPattern.matcher(afterReward);
+                
+                if (codeAfterMatcher.find()) {
+                    String code = codeAfterMatcher.group(1);
+                    
+                    if (isValidCode.test(code)) {
+                        boolean alreadyExists = activeCodes.stream()
+                            .anyMatch(c -> c.getCode().equals(code));
+                        
+                        if (!alreadyExists) {
+                            activeCodes.add(new CouponResponse(code, reward, date, "Active", "Global"));
+                        }
+                    }
+                }
+            }
+            
+            return activeCodes;
+        }
+        
+        private static String extractRewardFromSection(String section, String code) {
+            String lowerSection = section.toLowerCase();
+            int rewardIndex = lowerSection.indexOf("reward");
+            
+            if (rewardIndex >= 0) {
+                String afterReward = section.substring(rewardIndex);
+                int colonIndex = afterReward.indexOf(":");
+                if (colonIndex >= 0) {
+                    String rewardText = afterReward.substring(colonIndex + 1).trim();
+                    
+                    rewardText = rewardText.replaceAll("\\b" + code + "\\b", "").trim();
+                    rewardText = rewardText.replaceAll("\\s+", " ");
+                    
+                    if (!rewardText.isEmpty() && rewardText.length() < 100) {
+                        return rewardText;
+                    }
+                }
+            }
+            
+            if (section.toLowerCase().contains("gems") || section.toLowerCase().contains("pack")) {
+                String[] words = section.split("\\s+");
+                StringBuilder reward = new StringBuilder();
+                
+                for (String word : words) {
+                    if (word.toLowerCase().contains("gem") ||
+                        word.toLowerCase().contains("pack") ||
+                        word.toLowerCase().contains("point") ||
+                        word.matches("\\d+")) {
+                        reward.append(word).append(" ");
+                    }
+                }
+                
+                String result = reward.toString().trim();
+                if (!result.isEmpty()) {
+                    return result;
+                }
+            }
+            
+            return "Unknown reward";
+        }
+        
+        private static String extractDateFromSection(String section) {
+            Matcher dateMatcher = Pattern.compile("(\\d{1,2})(?:st|nd|rd|th)?\\s+(\\w+)", Pattern.CASE_INSENSITIVE)
+                    .matcher(section);
+            if (dateMatcher.find()) {
+                return dateMatcher.group(0);
+            }
+            return "Unknown";
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.genshin.couponscraper.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    
+    @Test
+    void reportsBucketUpperBoundForPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(Duration.ofMillis(180));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(Duration.ofMillis(2600));
+        }
+        
+        assertEquals(100, histogram.getCount());
+        assertEquals(Duration.ofMillis(200), histogram.percentile(50));
+        assertEquals(Duration.ofMillis(2600), histogram.percentile(95));
+        assertEquals(2600L, histogram.getStats().get("maxMillis"));
+    }
+    
+    @Test
+    void emptyHistogramReportsZero() {
+        assertEquals(Duration.ZERO, new LatencyHistogram().percentile(95));
+    }
+}
@@ -0,0 +1,103 @@
+package com.genshin.couponscraper.service;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryExecutorTest {
+    
+    private final ExecutorService attemptExecutor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    
+    @AfterEach
+    void tearDown() {
+        attemptExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+    
+    private RetryExecutor executor(int maxAttempts, Duration initialBackoff) {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getRetry().setMaxAttempts(maxAttempts);
+        properties.getRetry().setInitialBackoff(initialBackoff);
+        properties.getRetry().setJitter(0);
+        return new RetryExecutor(attemptExecutor, scheduler, properties);
+    }
+    
+    @Test
+    void backsOffExponentiallyWithinTheJitterRange() {
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(500), 2.0, 0.5, 95, Duration.ZERO);
+        
+        for (int i = 0; i < 100; i++) {
+            assertTrue(between(policy.backoff(1), 50, 100));
+            assertTrue(between(policy.backoff(2), 100, 200));
+            assertTrue(between(policy.backoff(4), 250, 500), "capped at the max backoff");
+        }
+    }
+    
+    @Test
+    void retriesFailedAttemptsAfterBackoff() throws IOException {
+        RetryExecutor retries = executor(3, Duration.ofMillis(50));
+        AtomicInteger calls = new AtomicInteger();
+        
+        long start = System.nanoTime();
+        String result = retries.execute("genshin", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IOException("502");
+            }
+            return "OK";
+        });
+        
+        assertEquals("OK", result);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150), "backs off 50 ms, then 100 ms");
+        assertEquals(2L, retries.getStats().get("genshin").get("retries"));
+        
+        assertThrows(SocketTimeoutException.class, () -> retries.execute("hsr", () -> {
+            throw new SocketTimeoutException("Read timed out");
+        }));
+        assertEquals(1L, retries.getStats().get("hsr").get("exhausted"));
+    }
+    
+    @Test
+    void hedgesASlowPrimaryAndTakesTheFirstAcceptedResult() throws Exception {
+        RetryExecutor retries = executor(1, Duration.ZERO);
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        
+        long start = System.nanoTime();
+        List<String> codes = retries.hedge("fc-mobile-page", () -> {
+            release.join();
+            return List.of("JSOUP");
+        }, () -> List.of("HTMLUNIT"), Duration.ofMillis(50), found -> !found.isEmpty());
+        release.complete(null);
+        
+        assertEquals(List.of("HTMLUNIT"), codes);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1L, retries.getStats().get("fc-mobile-page").get("hedgeWins"));
+        
+        AtomicInteger secondaryCalls = new AtomicInteger();
+        assertEquals(List.of("JSOUP"), retries.hedge("fast", () -> List.of("JSOUP"), () -> {
+            secondaryCalls.incrementAndGet();
+            return List.of("HTMLUNIT");
+        }, Duration.ofSeconds(5), found -> !found.isEmpty()));
+        assertEquals(0, secondaryCalls.get());
+        
+        assertEquals(List.of(), retries.hedge("empty", List::<String>of, List::<String>of,
+                Duration.ofSeconds(5), found -> !found.isEmpty()), "an empty primary starts the secondary at once");
+    }
+    
+    private static boolean between(Duration delay, long minMillis, long maxMillis) {
+        return delay.toMillis() >= minMillis && delay.toMillis() <= maxMillis;
+    }
+}
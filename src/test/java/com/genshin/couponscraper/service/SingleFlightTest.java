@@ -0,0 +1,138 @@
+package com.genshin.couponscraper.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> singleFlight.execute("genshin", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "result";
+            })));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("genshin", () -> {
+                    calls.incrementAndGet();
+                    return "duplicate";
+                })));
+            }
+            while (singleFlight.getCoalesced("genshin") < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            
+            for (Future<String> result : results) {
+                assertEquals("result", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+            assertEquals(1, singleFlight.getExecutions("genshin"));
+            assertEquals(7, singleFlight.getCoalesced("genshin"));
+            assertFalse(singleFlight.isInFlight("genshin"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void failureIsNotCachedForLaterCallers() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        
+        assertThrows(IOException.class, () -> singleFlight.execute("fc-mobile", () -> {
+            throw new IOException("upstream down");
+        }));
+        assertEquals("ok", singleFlight.execute("fc-mobile", () -> "ok"));
+        assertEquals(2, singleFlight.getExecutions("fc-mobile"));
+    }
+    
+    @Test
+    void callerJoiningAnOpenCircuitRefreshGetsTheCircuitOpenException() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CircuitOpenException open = new CircuitOpenException("genshin", Duration.ofSeconds(30));
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("genshin", () -> {
+                started.countDown();
+                while (singleFlight.getCoalesced("genshin") < 1) {
+                    Thread.onSpinWait();
+                }
+                throw open;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> joiner = executor.submit(() -> singleFlight.execute("genshin", () -> "duplicate"));
+            
+            ExecutionException joined = assertThrows(ExecutionException.class, () -> joiner.get(5, TimeUnit.SECONDS));
+            assertSame(open, joined.getCause(), "the scheduler tells a skipped refresh apart by its type");
+            assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+            assertEquals(1, singleFlight.getExecutions("genshin"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void interruptedCallerStopsWaitingWithoutFailingTheExecution() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("genshin", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "result";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> joiner = executor.submit(() -> singleFlight.execute("genshin", () -> "duplicate"));
+            while (singleFlight.getCoalesced("genshin") < 1) {
+                Thread.sleep(1);
+            }
+            
+            joiner.cancel(true);
+            // The joiner's thread is free again while the execution is still in flight
+            assertEquals("free", executor.submit(() -> "free").get(5, TimeUnit.SECONDS));
+            assertTrue(singleFlight.isInFlight("genshin"));
+            
+            release.countDown();
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
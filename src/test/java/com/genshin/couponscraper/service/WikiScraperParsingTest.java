@@ -0,0 +1,80 @@
+package com.genshin.couponscraper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.fetch.DocumentParser;
+import com.genshin.couponscraper.fetch.MediaWikiClient;
+import com.genshin.couponscraper.fetch.PageFetcher;
+import com.genshin.couponscraper.fetch.ParseScope;
+import com.genshin.couponscraper.model.CouponResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs each wiki scraper's parser over a saved page and compares the coupons with the
+ * output recorded for that page.
+ */
+class WikiScraperParsingTest {
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PageFetcher pageFetcher = mock(PageFetcher.class);
+    private final CouponScraperProperties properties = new CouponScraperProperties();
+    private final WikiCouponFetcher wikiFetcher =
+            new WikiCouponFetcher(pageFetcher, new MediaWikiClient(pageFetcher, properties), properties);
+    private String page;
+    
+    @BeforeEach
+    void servePageFromFixture() throws IOException {
+        when(pageFetcher.fetchParsed(anyString(), anyLong(), any(), any(), any())).thenAnswer(invocation -> {
+            ParseScope scope = invocation.getArgument(3);
+            DocumentParser<?> parser = invocation.getArgument(4);
+            return parser.parse(scope.parse(resource("/pages/" + page + ".html"), invocation.getArgument(0)));
+        });
+    }
+    
+    @Test
+    void parsesGenshinPromotionalCodes() throws IOException {
+        page = "genshin-promotional-code";
+        assertMatchesRecordedOutput(new GenshinImpactScraperService(wikiFetcher).fetchActiveCoupons());
+    }
+    
+    @Test
+    void parsesHonkaiStarRailRedemptionCodes() throws IOException {
+        page = "honkai-star-rail-redemption-code";
+        assertMatchesRecordedOutput(new HonkaiStarRailScraperService(wikiFetcher).fetchActiveCoupons());
+    }
+    
+    @Test
+    void parsesPlayTogetherCouponCodes() throws IOException {
+        page = "play-together-coupon-code";
+        assertMatchesRecordedOutput(new PlayTogetherScraperService(wikiFetcher).fetchActiveCoupons());
+    }
+    
+    @Test
+    void parsesBloxFruitsCodes() throws IOException {
+        page = "blox-fruits-codes";
+        assertMatchesRecordedOutput(new BloxFruitsScraperService(wikiFetcher).scrapeActiveCoupons());
+    }
+    
+    private void assertMatchesRecordedOutput(List<CouponResponse> coupons) throws IOException {
+        String actual = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(coupons);
+        assertFalse(coupons.isEmpty());
+        assertEquals(resource("/pages/" + page + ".expected.json").trim(), actual.trim());
+    }
+    
+    private static String resource(String name) throws IOException {
+        try (InputStream in = WikiScraperParsingTest.class.getResourceAsStream(name)) {
+            assertNotNull(in, name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.genshin.couponscraper.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.fetch.MediaWikiClient;
+import com.genshin.couponscraper.fetch.PageFetcher;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Scrapes the Genshin Impact wiki in section mode from a local stand-in serving
+ * recorded {@code api.php} responses.
+ */
+class WikiSectionSourceTest {
+    
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final CouponScraperProperties properties = new CouponScraperProperties();
+    private volatile String sectionList = "genshin-sections";
+    private volatile Map<String, String> sectionFiles = Map.of("1", "genshin-section-active", "2", "genshin-section-expired");
+    private HttpServer server;
+    private PageFetcher pageFetcher;
+    private GenshinImpactScraperService scraper;
+    
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api.php", this::serveApi);
+        server.createContext("/wiki/Promotional_Code", exchange -> send(exchange, "/pages/genshin-promotional-code.html"));
+        server.start();
+        
+        properties.getWiki().getBaseUrls().put("genshin", "http://127.0.0.1:" + server.getAddress().getPort());
+        properties.getWiki().getModes().put("genshin", CouponScraperProperties.Wiki.Mode.SECTION);
+        pageFetcher = new PageFetcher(properties);
+        scraper = new GenshinImpactScraperService(
+                new WikiCouponFetcher(pageFetcher, new MediaWikiClient(pageFetcher, properties), properties));
+    }
+    
+    @AfterEach
+    void tearDown() throws IOException {
+        pageFetcher.close();
+        server.stop(0);
+    }
+    
+    @Test
+    void fetchesOnlyTheCodesSection() throws IOException {
+        List<CouponResponse> coupons = scraper.fetchActiveCoupons();
+        
+        assertEquals(recordedPageOutput(), json(coupons));
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(0).contains("prop=sections"), requests.get(0));
+        assertTrue(requests.get(1).contains("prop=text") && requests.get(1).contains("section=1"), requests.get(1));
+        
+        scraper.fetchActiveCoupons();
+        assertEquals(3, requests.size(), "the section number is reused");
+    }
+    
+    @Test
+    void fallsBackToThePageWithoutTheSection() throws IOException {
+        properties.getWiki().getSections().put("genshin", "Redeemable Codes");
+        
+        List<CouponResponse> coupons = scraper.fetchActiveCoupons();
+        
+        assertEquals(recordedPageOutput(), json(coupons));
+        assertTrue(requests.get(requests.size() - 1).startsWith("/wiki/Promotional_Code"));
+    }
+    
+    @Test
+    void fetchesThePageDirectlyWithoutAHeading() throws IOException {
+        properties.getWiki().getSections().put("genshin", "");
+        
+        List<CouponResponse> coupons = scraper.fetchActiveCoupons();
+        
+        assertEquals(recordedPageOutput(), json(coupons));
+        assertEquals(1, requests.size(), "no sections lookup: " + requests);
+        assertTrue(requests.get(0).startsWith("/wiki/Promotional_Code"));
+    }
+    
+    @Test
+    void resolvesTheSectionAgainWhenSectionsMove() throws IOException {
+        scraper.fetchActiveCoupons();
+        sectionList = "genshin-sections-reordered";
+        sectionFiles = Map.of("1", "genshin-section-expired", "2", "genshin-section-active");
+        
+        // Section 1 is now "Expired Codes": this fetch falls back to the page, the next one finds section 2
+        assertEquals(recordedPageOutput(), json(scraper.fetchActiveCoupons()));
+        assertTrue(requests.get(requests.size() - 1).startsWith("/wiki/Promotional_Code"));
+        
+        requests.clear();
+        assertEquals(recordedPageOutput(), json(scraper.fetchActiveCoupons()));
+        assertTrue(requests.get(0).contains("prop=sections"), requests.get(0));
+        assertTrue(requests.get(1).contains("section=2"), requests.get(1));
+    }
+    
+    private void serveApi(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        if (query.contains("prop=sections")) {
+            send(exchange, "/mediawiki/" + sectionList + ".json");
+            return;
+        }
+        String section = query.replaceAll(".*[?&]?section=(\\d+).*", "$1");
+        send(exchange, "/mediawiki/" + sectionFiles.get(section) + ".json");
+    }
+    
+    private void send(HttpExchange exchange, String resource) throws IOException {
+        requests.add(exchange.getRequestURI().toString());
+        byte[] body = resource(resource);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static String recordedPageOutput() throws IOException {
+        return new String(resource("/pages/genshin-promotional-code.expected.json"), StandardCharsets.UTF_8).trim();
+    }
+    
+    private static String json(List<CouponResponse> coupons) throws IOException {
+        return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(coupons);
+    }
+    
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = WikiSectionSourceTest.class.getResourceAsStream(name)) {
+            assertNotNull(in, name);
+            return in.readAllBytes();
+        }
+    }
+}
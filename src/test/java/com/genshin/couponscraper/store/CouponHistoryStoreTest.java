@@ -0,0 +1,104 @@
+package com.genshin.couponscraper.store;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import com.genshin.couponscraper.service.SnapshotUpdatedEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CouponHistoryStoreTest {
+    
+    private static final Instant START = Instant.parse("2025-10-16T08:00:00Z");
+    
+    @TempDir
+    Path directory;
+    
+    private CouponHistoryStore store() {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getHistory().setDirectory(directory.toString());
+        return new CouponHistoryStore(properties);
+    }
+    
+    private static void scrape(CouponHistoryStore store, Game game, Instant fetchedAt, List<String> codes) {
+        List<CouponResponse> coupons = new ArrayList<>();
+        for (String code : codes) {
+            coupons.add(new CouponResponse(code, "Primogem ×60", "1st January", "Active", null));
+        }
+        store.onSnapshotUpdated(new SnapshotUpdatedEvent(null, new CouponSnapshot(game, coupons, fetchedAt)));
+    }
+    
+    @Test
+    void answersActiveCodesAndChangesBetweenTimes() {
+        CouponHistoryStore store = store();
+        scrape(store, Game.GENSHIN, START, List.of("ALPHA", "BETA"));
+        scrape(store, Game.GENSHIN, START.plusSeconds(60), List.of("ALPHA", "BETA"));
+        scrape(store, Game.GENSHIN, START.plusSeconds(120), List.of("BETA", "GAMMA"));
+        scrape(store, Game.GENSHIN, START.plusSeconds(180), List.of("GAMMA", "ALPHA"));
+        
+        assertEquals(List.of(), store.activeAt(Game.GENSHIN, START.minusSeconds(1)));
+        assertEquals(List.of("ALPHA", "BETA"), store.activeAt(Game.GENSHIN, START.plusSeconds(119)));
+        assertEquals(List.of("BETA", "GAMMA"), store.activeAt(Game.GENSHIN, START.plusSeconds(120)));
+        assertEquals(List.of("ALPHA", "GAMMA"), store.activeAt(Game.GENSHIN, START.plusSeconds(3600)));
+        assertEquals(List.of(), store.activeAt(Game.HONKAI_STAR_RAIL, START.plusSeconds(3600)));
+        
+        CouponHistoryStore.Changes changes = store.changesBetween(Game.GENSHIN, START, START.plusSeconds(150));
+        assertEquals(List.of("GAMMA"), changes.added());
+        assertEquals(List.of("ALPHA"), changes.removed());
+        assertEquals(3L, store.getStats().get("genshin").get("changes"), "an unchanged scrape is not recorded");
+    }
+    
+    @Test
+    void replaysTheLogAcrossCheckpointsAfterARestart() throws IOException {
+        CouponHistoryStore store = store();
+        int scrapes = CouponHistoryStore.CHECKPOINT_INTERVAL * 3 + 5;
+        for (int i = 0; i < scrapes; i++) {
+            scrape(store, Game.BLOX_FRUITS, START.plusSeconds(i * 60L), List.of("SHARED", "CODE" + i, "CODE" + (i + 1)));
+        }
+        Path log = directory.resolve("blox-fruits.history");
+        long intact = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 9, 1}, StandardOpenOption.APPEND);
+        
+        CouponHistoryStore reopened = store();
+        
+        assertEquals(intact, Files.size(log));
+        assertEquals(4L, reopened.getStats().get("blox-fruits").get("checkpoints"));
+        for (int i : new int[]{0, 31, 32, 33, 64, 70, scrapes - 1}) {
+            assertEquals(List.of("SHARED", "CODE" + i, "CODE" + (i + 1)),
+                    reopened.activeAt(Game.BLOX_FRUITS, START.plusSeconds(i * 60L + 30)), "at scrape " + i);
+        }
+        CouponHistoryStore.Changes changes = reopened.changesBetween(Game.BLOX_FRUITS,
+                START.plusSeconds(10 * 60), START.plusSeconds(50 * 60));
+        assertEquals(List.of("CODE50", "CODE51"), changes.added());
+        assertEquals(List.of("CODE10", "CODE11"), changes.removed());
+        
+        scrape(reopened, Game.BLOX_FRUITS, START.plusSeconds(scrapes * 60L), List.of("SHARED"));
+        assertEquals(List.of("SHARED"), store().activeAt(Game.BLOX_FRUITS, START.plusSeconds(scrapes * 60L)));
+    }
+    
+    @Test
+    void writesKnownCodesAsSmallIds() throws IOException {
+        CouponHistoryStore store = store();
+        List<String> codes = List.of("GENSHINGIFT", "PRIMOGEMS2025", "LIYUEHARBOR", "MONDSTADTWIND");
+        scrape(store, Game.GENSHIN, START, codes);
+        scrape(store, Game.GENSHIN, START.plusSeconds(600), List.of());
+        Path log = directory.resolve("genshin.history");
+        long afterFirstScrapes = Files.size(log);
+        
+        scrape(store, Game.GENSHIN, START.plusSeconds(1200), codes);
+        
+        assertTrue(Files.size(log) - afterFirstScrapes <= 20,
+                "re-adding four known codes took " + (Files.size(log) - afterFirstScrapes) + " bytes");
+    }
+}
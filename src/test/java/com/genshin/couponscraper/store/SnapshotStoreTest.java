@@ -0,0 +1,95 @@
+package com.genshin.couponscraper.store;
+
+import com.genshin.couponscraper.config.CouponScraperProperties;
+import com.genshin.couponscraper.model.CouponResponse;
+import com.genshin.couponscraper.model.CouponSnapshot;
+import com.genshin.couponscraper.model.Game;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+    
+    @TempDir
+    Path directory;
+    
+    private SnapshotStore store(DataSize compactAfter) {
+        CouponScraperProperties properties = new CouponScraperProperties();
+        properties.getStore().setDirectory(directory.toString());
+        properties.getStore().setCompactAfter(compactAfter);
+        return new SnapshotStore(properties);
+    }
+    
+    private static CouponSnapshot snapshot(Game game, String code, Instant fetchedAt) {
+        CouponResponse coupon = new CouponResponse(code, "Primogem ×60", "1st January", "Active", null);
+        coupon.setRaw("raw " + code);
+        return new CouponSnapshot(game, List.of(coupon), fetchedAt);
+    }
+    
+    @Test
+    void restoresTheLatestSnapshotOfEachGame() throws IOException {
+        Instant start = Instant.parse("2025-10-16T08:00:00Z");
+        SnapshotStore store = store(DataSize.ofMegabytes(1));
+        store.save(snapshot(Game.GENSHIN, "FIRSTCODE", start));
+        store.save(snapshot(Game.GENSHIN, "SECONDCODE", start.plusSeconds(300)));
+        long sizeBeforeTouch = Files.size(directory.resolve("genshin.snapshots"));
+        store.save(snapshot(Game.GENSHIN, "SECONDCODE", start.plusSeconds(600)));
+        store.save(snapshot(Game.FC_MOBILE, "FCMOBILE25", start));
+        
+        assertTrue(Files.size(directory.resolve("genshin.snapshots")) - sizeBeforeTouch < 32,
+                "an unchanged scrape only appends its fetch time");
+        
+        Map<Game, CouponSnapshot> loaded = store(DataSize.ofMegabytes(1)).loadAll();
+        
+        assertEquals(2, loaded.size());
+        CouponSnapshot genshin = loaded.get(Game.GENSHIN);
+        assertEquals(start.plusSeconds(600), genshin.getFetchedAt());
+        assertEquals(snapshot(Game.GENSHIN, "SECONDCODE", start).getETag(), genshin.getETag());
+        assertEquals("raw SECONDCODE", genshin.getCoupons().get(0).getRaw());
+        assertNull(genshin.getCoupons().get(0).getServer());
+        assertEquals("FCMOBILE25", loaded.get(Game.FC_MOBILE).getCoupons().get(0).getCode());
+    }
+    
+    @Test
+    void cutsOffATornRecordAndKeepsAppending() throws IOException {
+        Instant start = Instant.parse("2025-10-16T08:00:00Z");
+        store(DataSize.ofMegabytes(1)).save(snapshot(Game.GENSHIN, "FIRSTCODE", start));
+        Path log = directory.resolve("genshin.snapshots");
+        long intact = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        
+        SnapshotStore reopened = store(DataSize.ofMegabytes(1));
+        assertEquals("FIRSTCODE", reopened.load(Game.GENSHIN).orElseThrow().getCoupons().get(0).getCode());
+        assertEquals(intact, Files.size(log));
+        
+        reopened.save(snapshot(Game.GENSHIN, "SECONDCODE", start.plusSeconds(300)));
+        assertEquals("SECONDCODE", store(DataSize.ofMegabytes(1)).load(Game.GENSHIN).orElseThrow()
+                .getCoupons().get(0).getCode());
+    }
+    
+    @Test
+    void compactsTheLogIntoOneRecord() throws IOException {
+        Instant start = Instant.parse("2025-10-16T08:00:00Z");
+        SnapshotStore store = store(DataSize.ofBytes(400));
+        for (int i = 0; i < 20; i++) {
+            store.save(snapshot(Game.BLOX_FRUITS, "CODE" + i, start.plusSeconds(i)));
+        }
+        
+        Path log = directory.resolve("blox-fruits.snapshots");
+        assertTrue(Files.size(log) <= 400, "log was " + Files.size(log) + " bytes");
+        assertFalse(Files.exists(directory.resolve("blox-fruits.snapshots.tmp")));
+        CouponSnapshot loaded = store(DataSize.ofBytes(400)).load(Game.BLOX_FRUITS).orElseThrow();
+        assertEquals("CODE19", loaded.getCoupons().get(0).getCode());
+        assertEquals(start.plusSeconds(19), loaded.getFetchedAt());
+    }
+}